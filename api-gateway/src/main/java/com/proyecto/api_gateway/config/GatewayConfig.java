@@ -13,6 +13,8 @@ import reactor.core.publisher.Mono;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.ThreadLocalRandom;
+
 /**
  * Configuración adicional para Spring Cloud Gateway
  */
@@ -37,6 +39,11 @@ public class GatewayConfig {
         @Override
         public GatewayFilter apply(Config config) {
             return (exchange, chain) -> {
+                // Muestreo: la decisión se toma una vez por petición, antes de armar ningún mensaje
+                if (!log.isInfoEnabled() || !muestrear(config.getSampleRate())) {
+                    return chain.filter(exchange);
+                }
+
                 if (config.isPreLogger()) {
                     log.info("🔍 Pre GatewayFilter logging: {} {}", 
                             exchange.getRequest().getMethod(),
@@ -55,9 +62,15 @@ public class GatewayConfig {
             };
         }
 
+        private static boolean muestrear(double sampleRate) {
+            return sampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+        }
+
         public static class Config {
             private boolean preLogger = true;
             private boolean postLogger = true;
+            // Fracción de peticiones registradas (1.0 = todas)
+            private double sampleRate = 1.0;
 
             public boolean isPreLogger() {
                 return preLogger;
@@ -74,6 +87,14 @@ public class GatewayConfig {
             public void setPostLogger(boolean postLogger) {
                 this.postLogger = postLogger;
             }
+
+            public double getSampleRate() {
+                return sampleRate;
+            }
+
+            public void setSampleRate(double sampleRate) {
+                this.sampleRate = sampleRate;
+            }
         }
     }
 
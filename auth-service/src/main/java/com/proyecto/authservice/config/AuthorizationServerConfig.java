@@ -21,6 +21,7 @@ import org.springframework.security.oauth2.core.oidc.OidcScopes;
 import org.springframework.security.oauth2.jwt.JwtDecoder;
 import org.springframework.security.oauth2.jwt.JwtEncoder;
 import org.springframework.security.oauth2.jwt.NimbusJwtEncoder;
+import org.springframework.security.oauth2.server.authorization.OAuth2TokenType;
 import org.springframework.security.oauth2.server.authorization.client.InMemoryRegisteredClientRepository;
 import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
 import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
@@ -29,6 +30,8 @@ import org.springframework.security.oauth2.server.authorization.config.annotatio
 import org.springframework.security.oauth2.server.authorization.settings.AuthorizationServerSettings;
 import org.springframework.security.oauth2.server.authorization.settings.ClientSettings;
 import org.springframework.security.oauth2.server.authorization.settings.TokenSettings;
+import org.springframework.security.oauth2.server.authorization.token.JwtEncodingContext;
+import org.springframework.security.oauth2.server.authorization.token.OAuth2TokenCustomizer;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.LoginUrlAuthenticationEntryPoint;
 import org.springframework.security.web.util.matcher.MediaTypeRequestMatcher;
@@ -175,6 +178,21 @@ public class AuthorizationServerConfig {
                 return new InMemoryRegisteredClientRepository(frontendClient, microserviceClient, testClient);
         }
 
+        /**
+         * Agrega el claim 'role' (ROLE_SERVICE) a los tokens client_credentials del cliente
+         * de microservicios, para que los resource servers autoricen las llamadas internas
+         */
+        @Bean
+        public OAuth2TokenCustomizer<JwtEncodingContext> tokenCustomizer() {
+                return context -> {
+                        if (OAuth2TokenType.ACCESS_TOKEN.equals(context.getTokenType())
+                                        && AuthorizationGrantType.CLIENT_CREDENTIALS.equals(context.getAuthorizationGrantType())
+                                        && "microservice-client".equals(context.getRegisteredClient().getClientId())) {
+                                context.getClaims().claim("role", "ROLE_SERVICE");
+                        }
+                };
+        }
+
         /**
          * Fuente de claves JWT
          */
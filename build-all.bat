@@ -1,6 +1,11 @@
 @echo off
 REM Script para compilar todos los microservicios con mvn clean package -DskipTests
 
+REM Biblioteca compartida: debe quedar en el repositorio local antes de los servicios
+cd /d "%~dp0common-http"
+echo Instalando common-http...
+mvn clean install -DskipTests
+
 cd /d "%~dp0auth-service"
 echo Compilando auth-service...
 mvn clean package -DskipTests
@@ -2,12 +2,16 @@ package com.proyecto.clienteservice;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Aplicación principal del microservicio cliente-service
  * Gestión de clientes con PostgreSQL
  */
 @SpringBootApplication
+@EnableAsync
+@EnableScheduling
 public class ClienteServiceApplication {
 
     public static void main(String[] args) {
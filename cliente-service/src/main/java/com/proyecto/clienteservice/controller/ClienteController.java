@@ -10,12 +10,17 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Controlador REST para gestión de clientes
@@ -30,6 +35,9 @@ public class ClienteController {
     @Autowired
     private ClienteService clienteService;
 
+    @Value("${cliente.existencia.max-ids:1000}")
+    private int maxIdsExistencia;
+
     /**
      * Crear nuevo cliente
      */
@@ -104,6 +112,60 @@ public class ClienteController {
         }
     }
 
+    /**
+     * Verificar existencia de cliente (sin cuerpo de respuesta)
+     */
+    @RequestMapping(value = "/{id}", method = RequestMethod.HEAD)
+    @Operation(summary = "Verificar cliente", description = "Responde 200 si el cliente existe y está activo, 404 en caso contrario")
+    @ApiResponse(responseCode = "200", description = "Cliente existe y está activo")
+    @ApiResponse(responseCode = "404", description = "Cliente no encontrado o inactivo")
+    @PreAuthorize("hasAnyRole('ADMIN', 'CLIENTE', 'SERVICE')")
+    public ResponseEntity<Void> verificarCliente(@Parameter(description = "ID del cliente") @PathVariable Long id) {
+        try {
+            return clienteService.existeClienteActivo(id) ?
+                    ResponseEntity.ok().build() : ResponseEntity.notFound().build();
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Verificar existencia de varios clientes en una sola consulta
+     */
+    @PostMapping("/existen")
+    @Operation(summary = "Verificar clientes", description = "Clasifica los IDs dados en clientes activos y no válidos (inexistentes o inactivos)")
+    @ApiResponse(responseCode = "200", description = "Verificación completada")
+    @ApiResponse(responseCode = "400", description = "Lista vacía o demasiado grande")
+    @PreAuthorize("hasAnyRole('ADMIN', 'CLIENTE', 'SERVICE')")
+    public ResponseEntity<?> verificarClientes(@RequestBody List<Long> ids) {
+        try {
+            Set<Long> unicos = new LinkedHashSet<>(ids);
+            unicos.remove(null);
+            if (unicos.isEmpty()) {
+                return ResponseEntity.badRequest().body("Error: la lista de IDs está vacía");
+            }
+            if (unicos.size() > maxIdsExistencia) {
+                return ResponseEntity.badRequest()
+                        .body("Error: se admiten como máximo " + maxIdsExistencia + " IDs por consulta");
+            }
+
+            Set<Long> activos = new HashSet<>(clienteService.filtrarClientesActivos(unicos));
+            List<Long> validos = new ArrayList<>();
+            List<Long> invalidos = new ArrayList<>();
+            for (Long id : unicos) {
+                if (activos.contains(id)) {
+                    validos.add(id);
+                } else {
+                    invalidos.add(id);
+                }
+            }
+            return ResponseEntity.ok(new ExistenciaClientesResponse(validos, invalidos));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error al verificar clientes: " + e.getMessage());
+        }
+    }
+
     /**
      * Obtener cliente por email
      */
@@ -296,6 +358,24 @@ public class ClienteController {
         }
     }
 
+    public static class ExistenciaClientesResponse {
+        private List<Long> validos;
+        private List<Long> invalidos;
+
+        public ExistenciaClientesResponse(List<Long> validos, List<Long> invalidos) {
+            this.validos = validos;
+            this.invalidos = invalidos;
+        }
+
+        public List<Long> getValidos() {
+            return validos;
+        }
+
+        public List<Long> getInvalidos() {
+            return invalidos;
+        }
+    }
+
     public static class EstadisticasResponse {
         private long clientesActivos;
 
@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -30,6 +31,17 @@ public interface ClienteRepository extends JpaRepository<Cliente, Long> {
      */
     List<Cliente> findByActivoTrue();
 
+    /**
+     * Verificar si existe un cliente activo con el ID dado
+     */
+    boolean existsByIdAndActivoTrue(Long id);
+
+    /**
+     * Obtener, de entre los IDs dados, los que corresponden a clientes activos
+     */
+    @Query("SELECT c.id FROM Cliente c WHERE c.id IN :ids AND c.activo = true")
+    List<Long> findIdsActivos(@Param("ids") Collection<Long> ids);
+
     /**
      * Buscar clientes por ciudad
      */
@@ -0,0 +1,8 @@
+package com.proyecto.clienteservice.service;
+
+/**
+ * Evento emitido cuando un cliente deja de ser válido para nuevos pedidos
+ * (eliminado o desactivado)
+ */
+public record ClienteInvalidadoEvent(Long clienteId) {
+}
@@ -5,11 +5,13 @@ import com.proyecto.clienteservice.dto.ClienteResponse;
 import com.proyecto.clienteservice.entity.Cliente;
 import com.proyecto.clienteservice.repository.ClienteRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -24,6 +26,9 @@ public class ClienteService {
     @Autowired
     private ClienteRepository clienteRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     /**
      * Crear un nuevo cliente
      */
@@ -155,6 +160,9 @@ public class ClienteService {
 
         cliente.setActivo(activo);
         Cliente clienteActualizado = clienteRepository.save(cliente);
+        if (Boolean.FALSE.equals(activo)) {
+            eventPublisher.publishEvent(new ClienteInvalidadoEvent(id));
+        }
         return convertirAResponse(clienteActualizado);
     }
 
@@ -166,6 +174,23 @@ public class ClienteService {
             throw new RuntimeException("Cliente no encontrado con ID: " + id);
         }
         clienteRepository.deleteById(id);
+        eventPublisher.publishEvent(new ClienteInvalidadoEvent(id));
+    }
+
+    /**
+     * Verificar si existe un cliente activo por ID
+     */
+    @Transactional(readOnly = true)
+    public boolean existeClienteActivo(Long id) {
+        return clienteRepository.existsByIdAndActivoTrue(id);
+    }
+
+    /**
+     * Filtrar los IDs que corresponden a clientes activos
+     */
+    @Transactional(readOnly = true)
+    public List<Long> filtrarClientesActivos(Collection<Long> ids) {
+        return clienteRepository.findIdsActivos(ids);
     }
 
     /**
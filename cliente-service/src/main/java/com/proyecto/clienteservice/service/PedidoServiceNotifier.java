@@ -0,0 +1,54 @@
+package com.proyecto.clienteservice.service;
+
+import com.proyecto.common.http.ServiceTokenProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Notifica a pedido-service las bajas y desactivaciones de clientes para que
+ * invalide su caché de clientes válidos.
+ *
+ * La notificación se envía después del commit y es de mejor esfuerzo: si falla,
+ * la entrada cacheada en pedido-service expira igualmente por TTL.
+ */
+@Component
+public class PedidoServiceNotifier {
+
+    private static final Logger logger = LoggerFactory.getLogger(PedidoServiceNotifier.class);
+
+    private final RestTemplate restTemplate;
+    private final ServiceTokenProvider tokenProvider;
+
+    @Value("${pedido.service.url:http://pedido-service:8083}")
+    private String pedidoServiceUrl;
+
+    public PedidoServiceNotifier(RestTemplate restTemplate, ServiceTokenProvider tokenProvider) {
+        this.restTemplate = restTemplate;
+        this.tokenProvider = tokenProvider;
+    }
+
+    @Async
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onClienteInvalidado(ClienteInvalidadoEvent evento) {
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setBearerAuth(tokenProvider.obtenerToken());
+
+            String url = pedidoServiceUrl + "/api/pedidos/internal/clientes/{clienteId}/invalidar";
+            restTemplate.postForEntity(url, new HttpEntity<>(headers), Void.class, evento.clienteId());
+            logger.debug("📣 Invalidación del cliente ID: {} notificada a pedido-service", evento.clienteId());
+        } catch (RestClientException e) {
+            logger.warn("⚠️ No se pudo notificar la invalidación del cliente ID: {} a pedido-service - {}",
+                        evento.clienteId(), e.getMessage());
+        }
+    }
+}
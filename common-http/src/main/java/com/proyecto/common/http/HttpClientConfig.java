@@ -0,0 +1,92 @@
+package com.proyecto.common.http;
+
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Cliente HTTP compartido para las llamadas entre microservicios.
+ *
+ * Reutiliza conexiones keep-alive desde un pool acotado por destino, aplica timeouts
+ * de conexión, lectura y espera de pool, y publica métricas por destino
+ * ({@code http.client.requests}) y del pool ({@code httpcomponents.httpclient.pool.*}).
+ * Se registra como auto-configuración en los microservicios que dependen de common-http;
+ * los límites se ajustan con {@code http.interservicios.*} en cada servicio.
+ */
+@AutoConfiguration
+public class HttpClientConfig {
+
+    @Value("${http.interservicios.max-conexiones:200}")
+    private int maxConexiones;
+
+    @Value("${http.interservicios.max-conexiones-por-ruta:50}")
+    private int maxConexionesPorRuta;
+
+    @Value("${http.interservicios.timeout-conexion-ms:2000}")
+    private long timeoutConexionMs;
+
+    @Value("${http.interservicios.timeout-lectura-ms:10000}")
+    private long timeoutLecturaMs;
+
+    @Value("${http.interservicios.timeout-pool-ms:2000}")
+    private long timeoutPoolMs;
+
+    @Value("${http.interservicios.conexion-inactiva-s:30}")
+    private long conexionInactivaS;
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager conexionesInterservicios() {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(maxConexiones)
+            .setMaxConnPerRoute(maxConexionesPorRuta)
+            .setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(timeoutConexionMs))
+                .setSocketTimeout(Timeout.ofMilliseconds(timeoutLecturaMs))
+                // Revalida conexiones ociosas antes de reutilizarlas (el destino pudo cerrarlas)
+                .setValidateAfterInactivity(TimeValue.ofSeconds(1))
+                .build())
+            .build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient httpClientInterservicios(PoolingHttpClientConnectionManager conexiones) {
+        return HttpClients.custom()
+            .setConnectionManager(conexiones)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(timeoutPoolMs))
+                .setResponseTimeout(Timeout.ofMilliseconds(timeoutLecturaMs))
+                .build())
+            .evictIdleConnections(TimeValue.ofSeconds(conexionInactivaS))
+            .evictExpiredConnections()
+            .build();
+    }
+
+    /**
+     * RestTemplate compartido; se construye con el RestTemplateBuilder de Spring Boot
+     * para que quede instrumentado con las métricas de cliente HTTP
+     */
+    @Bean
+    public RestTemplate restTemplate(RestTemplateBuilder builder, CloseableHttpClient httpClientInterservicios) {
+        return builder
+            .requestFactory(() -> new HttpComponentsClientHttpRequestFactory(httpClientInterservicios))
+            .build();
+    }
+
+    @Bean
+    public MeterBinder metricasPoolInterservicios(PoolingHttpClientConnectionManager conexionesInterservicios) {
+        return new PoolingHttpClientConnectionManagerMetricsBinder(conexionesInterservicios, "interservicios");
+    }
+}
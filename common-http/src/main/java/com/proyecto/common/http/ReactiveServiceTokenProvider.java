@@ -0,0 +1,27 @@
+package com.proyecto.common.http;
+
+import org.springframework.web.client.RestTemplate;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Token de servicio para los servicios con Reactor en el classpath (WebClient).
+ */
+public class ReactiveServiceTokenProvider extends ServiceTokenProvider {
+
+    public ReactiveServiceTokenProvider(RestTemplate restTemplate) {
+        super(restTemplate);
+    }
+
+    /**
+     * Variante para flujos no bloqueantes: entrega el token cacheado de inmediato y,
+     * si hay que solicitarlo, lo hace fuera del hilo que se suscribe.
+     */
+    public Mono<String> obtenerTokenReactivo() {
+        String cacheado = tokenCacheado();
+        if (cacheado != null) {
+            return Mono.just(cacheado);
+        }
+        return Mono.fromCallable(this::obtenerToken).subscribeOn(Schedulers.boundedElastic());
+    }
+}
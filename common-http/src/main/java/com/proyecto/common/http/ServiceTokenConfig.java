@@ -0,0 +1,33 @@
+package com.proyecto.common.http;
+
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Registra el {@link ServiceTokenProvider} de cada microservicio; con Reactor en el
+ * classpath se registra la variante {@link ReactiveServiceTokenProvider}.
+ */
+@AutoConfiguration(after = HttpClientConfig.class)
+public class ServiceTokenConfig {
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "reactor.core.publisher.Mono")
+    static class Reactivo {
+
+        @Bean
+        @ConditionalOnMissingBean(ServiceTokenProvider.class)
+        public ReactiveServiceTokenProvider reactiveServiceTokenProvider(RestTemplate restTemplate) {
+            return new ReactiveServiceTokenProvider(restTemplate);
+        }
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(ServiceTokenProvider.class)
+    public ServiceTokenProvider serviceTokenProvider(RestTemplate restTemplate) {
+        return new ServiceTokenProvider(restTemplate);
+    }
+}
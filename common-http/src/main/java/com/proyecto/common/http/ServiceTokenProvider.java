@@ -0,0 +1,132 @@
+package com.proyecto.common.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token de servicio (grant client_credentials) para las llamadas entre microservicios.
+ *
+ * Se obtiene de auth-service con el cliente {@code microservice-client}, se cachea
+ * hasta poco antes de su expiración y se renueva en segundo plano, de modo que los
+ * procesos asíncronos no dependen del JWT de una petición de usuario. Lo registra
+ * {@link ServiceTokenConfig}; la renovación requiere {@code @EnableScheduling} en el servicio.
+ */
+public class ServiceTokenProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServiceTokenProvider.class);
+
+    // Margen mínimo de validez para entregar un token cacheado
+    private static final long MARGEN_SEGURIDAD_S = 10;
+
+    private final RestTemplate restTemplate;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    @Value("${auth.service.url:http://auth-service:8081}")
+    private String authServiceUrl;
+
+    @Value("${auth.client-credentials.client-id:microservice-client}")
+    private String clientId;
+
+    @Value("${auth.client-credentials.client-secret:microservice-secret}")
+    private String clientSecret;
+
+    @Value("${auth.client-credentials.renovacion-anticipada-s:120}")
+    private long renovacionAnticipadaS;
+
+    private volatile TokenCacheado actual;
+
+    public ServiceTokenProvider(RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
+    /**
+     * Devuelve un token vigente, solicitándolo a auth-service si no hay uno en caché.
+     * Los errores de comunicación se propagan como RestClientException.
+     */
+    public String obtenerToken() {
+        String cacheado = tokenCacheado();
+        if (cacheado != null) {
+            return cacheado;
+        }
+
+        lock.lock();
+        try {
+            TokenCacheado token = actual;
+            if (token == null || !token.vigenteDurante(MARGEN_SEGURIDAD_S)) {
+                token = solicitarToken();
+                actual = token;
+            }
+            return token.valor;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Token cacheado si sigue vigente, o null si hay que solicitarlo
+     */
+    String tokenCacheado() {
+        TokenCacheado token = actual;
+        return token != null && token.vigenteDurante(MARGEN_SEGURIDAD_S) ? token.valor : null;
+    }
+
+    /**
+     * Renueva el token antes de que expire para no bloquear a quien lo necesite
+     */
+    @Scheduled(fixedDelayString = "${auth.client-credentials.intervalo-verificacion-ms:30000}")
+    public void renovarAnticipadamente() {
+        TokenCacheado token = actual;
+        if (token == null || token.vigenteDurante(renovacionAnticipadaS)) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            actual = solicitarToken();
+        } catch (RestClientException e) {
+            logger.warn("⚠️ No se pudo renovar el token de servicio - {}", e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private TokenCacheado solicitarToken() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        headers.setBasicAuth(clientId, clientSecret);
+
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        form.add("grant_type", "client_credentials");
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> respuesta = restTemplate.postForObject(
+            authServiceUrl + "/oauth2/token", new HttpEntity<>(form, headers), Map.class);
+
+        if (respuesta == null || respuesta.get("access_token") == null) {
+            throw new RestClientException("Respuesta de token sin access_token");
+        }
+
+        long expiraEnS = respuesta.get("expires_in") instanceof Number n ? n.longValue() : 300;
+        logger.info("🔑 Token de servicio obtenido para '{}' (expira en {} s)", clientId, expiraEnS);
+        return new TokenCacheado((String) respuesta.get("access_token"), Instant.now().plusSeconds(expiraEnS));
+    }
+
+    private record TokenCacheado(String valor, Instant expiracion) {
+        boolean vigenteDurante(long segundos) {
+            return Instant.now().plusSeconds(segundos).isBefore(expiracion);
+        }
+    }
+}
@@ -1,5 +1,7 @@
-import { Component, OnInit } from '@angular/core';
-import { PedidoService } from './pedido.service';
+import { Component, OnDestroy, OnInit } from '@angular/core';
+import { Subscription, timer } from 'rxjs';
+import { switchMap, takeWhile } from 'rxjs/operators';
+import { PedidoService, SyncJob } from './pedido.service';
 import { TrackingService } from './tracking.service';
 import { AuthService } from './auth.service';
 import { CommonModule } from '@angular/common';
@@ -78,6 +80,35 @@ import { FormsModule } from '@angular/forms';
             {{ sincronizando ? 'Sincronizando...' : 'Sincronizar Todos los Pedidos' }}
           </button>
           
+          <button 
+            *ngIf="syncJob && syncJob.estado === 'EN_PROGRESO'"
+            type="button" 
+            class="btn-secondary" 
+            (click)="cancelarSincronizacion()" 
+            [disabled]="syncJob.cancelacionSolicitada"
+            style="margin-left: 10px;"
+          >
+            {{ syncJob.cancelacionSolicitada ? 'Cancelando...' : 'Cancelar' }}
+          </button>
+          
+          <div *ngIf="syncJob" class="status-details">
+            <div class="stat-item">
+              <strong>Estado:</strong> {{ syncJob.estado }}
+            </div>
+            <div class="stat-item">
+              <strong>Pedidos revisados:</strong> {{ syncJob.pedidosRevisados }}
+            </div>
+            <div class="stat-item">
+              <strong>Discrepancias:</strong> {{ syncJob.discrepancias }}
+            </div>
+            <div class="stat-item">
+              <strong>Sincronizados:</strong> {{ syncJob.sincronizados }}
+            </div>
+            <div class="stat-item">
+              <strong>Errores:</strong> {{ syncJob.errores }}
+            </div>
+          </div>
+          
           <div class="warning-text">
             <small>⚠️ Esta acción sincronizará todos los pedidos desde MySQL hacia Redis</small>
           </div>
@@ -343,7 +374,7 @@ import { FormsModule } from '@angular/forms';
     }
   `]
 })
-export class AdminSyncComponent implements OnInit {
+export class AdminSyncComponent implements OnInit, OnDestroy {
   isAdmin = false;
   cargando = false;
   sincronizando = false;
@@ -351,6 +382,8 @@ export class AdminSyncComponent implements OnInit {
   creando = false;
   
   estadoSistema: any = null;
+  syncJob: SyncJob | null = null;
+  private seguimientoJob?: Subscription;
   pedidoIdIndividual: number | null = null;
   
   operacionesLog: Array<{
@@ -369,6 +402,10 @@ export class AdminSyncComponent implements OnInit {
     this.verificarRoles();
   }
 
+  ngOnDestroy() {
+    this.seguimientoJob?.unsubscribe();
+  }
+
   verificarRoles() {
     const userInfo = this.authService.getUserInfo();
     this.isAdmin = userInfo?.role === 'ROLE_ADMIN';
@@ -397,20 +434,65 @@ export class AdminSyncComponent implements OnInit {
 
     this.sincronizando = true;
     this.pedidoService.sincronizarTodos().subscribe({
-      next: (resultado) => {
-        this.agregarLog('exito', 'Sincronización masiva completada exitosamente');
+      next: (job) => {
+        this.agregarLog('info', `Sincronización masiva iniciada (trabajo ${job.id})`);
+        this.seguirSyncJob(job);
+      },
+      error: (error) => {
+        console.error('Error en sincronización masiva:', error);
+        this.agregarLog('error', error.status === 409
+          ? 'Ya existe una sincronización masiva en curso'
+          : 'Error durante la sincronización masiva');
+        this.sincronizando = false;
+      }
+    });
+  }
+
+  seguirSyncJob(job: SyncJob) {
+    this.syncJob = job;
+    this.seguimientoJob?.unsubscribe();
+    this.seguimientoJob = timer(2000, 2000).pipe(
+      switchMap(() => this.pedidoService.obtenerSyncJob(job.id)),
+      takeWhile(actual => actual.estado === 'EN_PROGRESO', true)
+    ).subscribe({
+      next: (actual) => {
+        this.syncJob = actual;
+        if (actual.estado === 'EN_PROGRESO') return;
+
         this.sincronizando = false;
+        if (actual.estado === 'COMPLETADO') {
+          this.agregarLog('exito', `Sincronización masiva completada: ${actual.sincronizados} sincronizados, ${actual.errores} errores`);
+        } else if (actual.estado === 'CANCELADO') {
+          this.agregarLog('info', `Sincronización masiva cancelada tras ${actual.sincronizados} pedidos sincronizados`);
+        } else {
+          this.agregarLog('error', `Sincronización masiva fallida: ${actual.error || 'error desconocido'}`);
+        }
         // Recargar estado del sistema
         this.compararEstados();
       },
       error: (error) => {
-        console.error('Error en sincronización masiva:', error);
-        this.agregarLog('error', 'Error durante la sincronización masiva');
+        console.error('Error al consultar progreso de sincronización:', error);
+        this.agregarLog('error', 'Error al consultar el progreso de la sincronización masiva');
         this.sincronizando = false;
       }
     });
   }
 
+  cancelarSincronizacion() {
+    if (!this.syncJob) return;
+
+    this.pedidoService.cancelarSyncJob(this.syncJob.id).subscribe({
+      next: (job) => {
+        this.syncJob = job;
+        this.agregarLog('info', 'Cancelación de sincronización masiva solicitada');
+      },
+      error: (error) => {
+        console.error('Error al cancelar sincronización:', error);
+        this.agregarLog('error', 'Error al cancelar la sincronización masiva');
+      }
+    });
+  }
+
   repararPedido(pedidoId: number | null) {
     if (!pedidoId) return;
 
@@ -13,6 +13,15 @@ export interface PedidoResponse {
   estado: string;
   fechaCreacion: string;
   fechaActualizacion: string;
+  version?: number;
+}
+
+export interface CambioEstadoPedido {
+  pedidoId: number;
+  estado: string;
+  fechaActualizacion: string;
+  version: number | null;
+  aplicado: boolean;
 }
 
 export enum EstadoPedido {
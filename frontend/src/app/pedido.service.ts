@@ -1,7 +1,34 @@
 import { Injectable } from '@angular/core';
 import { HttpClient, HttpParams } from '@angular/common/http';
 import { Observable } from 'rxjs';
-import { PedidoRequest, PedidoResponse } from './models/pedido.model';
+import { CambioEstadoPedido, PedidoRequest, PedidoResponse } from './models/pedido.model';
+
+export interface SyncJob {
+  id: string;
+  estado: 'EN_PROGRESO' | 'COMPLETADO' | 'CANCELADO' | 'FALLIDO';
+  cancelacionSolicitada: boolean;
+  fechaInicio: string;
+  fechaFin?: string;
+  pedidosRevisados: number;
+  discrepancias: number;
+  sincronizados: number;
+  errores: number;
+  detallesErrores: string[];
+  error?: string;
+}
+
+export interface PaginaPedidos {
+  items: PedidoResponse[];
+  siguienteCursor: number | null;
+  limite: number;
+}
+
+export interface FiltrosPedidos {
+  clienteId?: number | null;
+  estado?: string | null;
+  cursor?: number | null;
+  limite?: number;
+}
 
 @Injectable({ providedIn: 'root' })
 export class PedidoService {
@@ -10,10 +37,11 @@ export class PedidoService {
   constructor(private http: HttpClient) {}
 
   /**
-   * Obtener todos los pedidos (solo admin)
+   * Obtener una página de pedidos, con filtros opcionales (solo admin).
+   * Para la página siguiente se envía como cursor el siguienteCursor recibido.
    */
-  getPedidos(): Observable<PedidoResponse[]> {
-    return this.http.get<PedidoResponse[]>(this.apiUrl);
+  getPedidos(filtros: FiltrosPedidos = {}): Observable<PaginaPedidos> {
+    return this.http.get<PaginaPedidos>(this.apiUrl, { params: this.paginaParams(filtros) });
   }
 
   /**
@@ -33,23 +61,31 @@ export class PedidoService {
   /**
    * Obtener pedidos por cliente
    */
-  getPedidosPorCliente(clienteId: number): Observable<PedidoResponse[]> {
-    return this.http.get<PedidoResponse[]>(`${this.apiUrl}/cliente/${clienteId}`);
+  getPedidosPorCliente(clienteId: number, cursor?: number | null, limite?: number): Observable<PaginaPedidos> {
+    return this.http.get<PaginaPedidos>(`${this.apiUrl}/cliente/${clienteId}`, {
+      params: this.paginaParams({ cursor, limite })
+    });
   }
 
   /**
    * Obtener pedidos por estado
    */
-  getPedidosPorEstado(estado: string): Observable<PedidoResponse[]> {
-    return this.http.get<PedidoResponse[]>(`${this.apiUrl}/estado/${estado}`);
+  getPedidosPorEstado(estado: string, cursor?: number | null, limite?: number): Observable<PaginaPedidos> {
+    return this.http.get<PaginaPedidos>(`${this.apiUrl}/estado/${estado}`, {
+      params: this.paginaParams({ cursor, limite })
+    });
   }
 
   /**
-   * Actualizar estado del pedido (solo admin)
+   * Actualizar estado del pedido (solo admin).
+   * Con la versión leída, el cambio se rechaza (409) si otro usuario modificó el pedido.
    */
-  actualizarEstadoPedido(id: number, estado: string): Observable<PedidoResponse> {
-    const params = new HttpParams().set('estado', estado);
-    return this.http.put<PedidoResponse>(`${this.apiUrl}/${id}/estado`, null, { params });
+  actualizarEstadoPedido(id: number, estado: string, version?: number): Observable<CambioEstadoPedido> {
+    let params = new HttpParams().set('estado', estado);
+    if (version != null) {
+      params = params.set('version', version);
+    }
+    return this.http.put<CambioEstadoPedido>(`${this.apiUrl}/${id}/estado`, null, { params });
   }
 
   /**
@@ -60,10 +96,24 @@ export class PedidoService {
   }
 
   /**
-   * Sincronizar todos los pedidos
+   * Sincronizar todos los pedidos (inicia un trabajo asíncrono)
+   */
+  sincronizarTodos(): Observable<SyncJob> {
+    return this.http.post<SyncJob>(`${this.apiUrl}/sync-jobs`, {});
+  }
+
+  /**
+   * Consultar el progreso de un trabajo de sincronización
+   */
+  obtenerSyncJob(jobId: string): Observable<SyncJob> {
+    return this.http.get<SyncJob>(`${this.apiUrl}/sync-jobs/${jobId}`);
+  }
+
+  /**
+   * Cancelar un trabajo de sincronización en curso
    */
-  sincronizarTodos(): Observable<any> {
-    return this.http.post<any>(`${this.apiUrl}/sync-all`, {});
+  cancelarSyncJob(jobId: string): Observable<SyncJob> {
+    return this.http.delete<SyncJob>(`${this.apiUrl}/sync-jobs/${jobId}`);
   }
 
   /**
@@ -79,4 +129,21 @@ export class PedidoService {
   sincronizarDesdeTracking(id: number): Observable<PedidoResponse> {
     return this.http.put<PedidoResponse>(`${this.apiUrl}/${id}/sync-from-tracking`, {});
   }
+
+  private paginaParams(filtros: FiltrosPedidos): HttpParams {
+    let params = new HttpParams();
+    if (filtros.clienteId) {
+      params = params.set('clienteId', filtros.clienteId);
+    }
+    if (filtros.estado) {
+      params = params.set('estado', filtros.estado);
+    }
+    if (filtros.cursor != null) {
+      params = params.set('cursor', filtros.cursor);
+    }
+    if (filtros.limite) {
+      params = params.set('limite', filtros.limite);
+    }
+    return params;
+  }
 }
@@ -97,11 +97,11 @@ import { PedidoRequest, PedidoResponse, EstadoPedido } from './models/pedido.mod
       <!-- Lista de pedidos -->
       <div class="card">
         <h3>Pedidos 
-          <span class="badge">{{ pedidosFiltrados.length }}</span>
+          <span class="badge">{{ pedidos.length }}{{ siguienteCursor !== null ? '+' : '' }}</span>
         </h3>
         
         <div class="table-container">
-          <table class="table" *ngIf="pedidosFiltrados.length > 0; else noPedidos">
+          <table class="table" *ngIf="pedidos.length > 0; else noPedidos">
             <thead>
               <tr>
                 <th>ID</th>
@@ -115,7 +115,7 @@ import { PedidoRequest, PedidoResponse, EstadoPedido } from './models/pedido.mod
               </tr>
             </thead>
             <tbody>
-              <tr *ngFor="let pedido of pedidosFiltrados">
+              <tr *ngFor="let pedido of pedidos">
                 <td>{{ pedido.id }}</td>
                 <td>{{ pedido.producto }}</td>
                 <td>{{ pedido.clienteId }}</td>
@@ -130,7 +130,7 @@ import { PedidoRequest, PedidoResponse, EstadoPedido } from './models/pedido.mod
                 <td *ngIf="isAdmin">
                   <select 
                     [(ngModel)]="pedido.estado" 
-                    (ngModelChange)="actualizarEstado(pedido.id, $event)"
+                    (ngModelChange)="actualizarEstado(pedido.id, $event, pedido.version)"
                     class="estado-select"
                   >
                     <option value="PENDIENTE">Pendiente</option>
@@ -143,6 +143,12 @@ import { PedidoRequest, PedidoResponse, EstadoPedido } from './models/pedido.mod
               </tr>
             </tbody>
           </table>
+
+          <div class="cargar-mas" *ngIf="siguienteCursor !== null">
+            <button class="btn-primary" (click)="cargarMas()" [disabled]="cargando">
+              {{ cargando ? 'Cargando...' : 'Cargar más' }}
+            </button>
+          </div>
           
           <ng-template #noPedidos>
             <div class="no-data">
@@ -155,6 +161,11 @@ import { PedidoRequest, PedidoResponse, EstadoPedido } from './models/pedido.mod
     </div>
   `,
   styles: [`
+    .cargar-mas {
+      text-align: center;
+      padding: 1rem;
+    }
+
     .filters {
       display: flex;
       gap: 1rem;
@@ -195,7 +206,8 @@ import { PedidoRequest, PedidoResponse, EstadoPedido } from './models/pedido.mod
 })
 export class PedidosComponent implements OnInit {
   pedidos: PedidoResponse[] = [];
-  pedidosFiltrados: PedidoResponse[] = [];
+  siguienteCursor: number | null = null;
+  cargando = false;
   nuevoPedido: PedidoRequest = { 
     producto: '', 
     clienteId: 1, 
@@ -225,19 +237,35 @@ export class PedidosComponent implements OnInit {
     this.isCliente = userInfo?.role === 'ROLE_CLIENTE';
   }
 
-  cargarPedidos() {
-    this.pedidoService.getPedidos().subscribe({
-      next: (data) => {
-        this.pedidos = data;
-        this.aplicarFiltros();
+  /**
+   * Carga la primera página con los filtros actuales; con más=true agrega la página siguiente
+   */
+  cargarPedidos(mas = false) {
+    this.cargando = true;
+    this.pedidoService.getPedidos({
+      estado: this.filtroEstado,
+      clienteId: this.filtroClienteId,
+      cursor: mas ? this.siguienteCursor : null
+    }).subscribe({
+      next: (pagina) => {
+        this.pedidos = mas ? this.pedidos.concat(pagina.items) : pagina.items;
+        this.siguienteCursor = pagina.siguienteCursor;
+        this.cargando = false;
       },
       error: (error) => {
+        this.cargando = false;
         console.error('Error al cargar pedidos:', error);
         alert('Error al cargar pedidos. Verifica tu conexión.');
       }
     });
   }
 
+  cargarMas() {
+    if (this.siguienteCursor !== null && !this.cargando) {
+      this.cargarPedidos(true);
+    }
+  }
+
   crearPedido() {
     if (!this.nuevoPedido.producto || !this.nuevoPedido.clienteId || !this.nuevoPedido.direccion) {
       alert('Por favor completa todos los campos requeridos');
@@ -262,31 +290,31 @@ export class PedidosComponent implements OnInit {
     });
   }
 
-  actualizarEstado(id: number, nuevoEstado: string) {
+  actualizarEstado(id: number, nuevoEstado: string, version?: number) {
     if (!this.isAdmin) {
       alert('No tienes permisos para actualizar estados');
       return;
     }
 
-    this.pedidoService.actualizarEstadoPedido(id, nuevoEstado).subscribe({
+    this.pedidoService.actualizarEstadoPedido(id, nuevoEstado, version).subscribe({
       next: (pedidoActualizado) => {
         alert('Estado actualizado exitosamente');
         this.cargarPedidos();
       },
       error: (error) => {
         console.error('Error al actualizar estado:', error);
-        alert('Error al actualizar estado del pedido');
+        // 409: transición no permitida o el pedido fue modificado por otro usuario
+        alert(error.status === 409 ? error.error : 'Error al actualizar estado del pedido');
         this.cargarPedidos(); // Recargar para revertir cambios en UI
       }
     });
   }
 
+  /**
+   * Los filtros se aplican en el servidor, reiniciando la paginación
+   */
   aplicarFiltros() {
-    this.pedidosFiltrados = this.pedidos.filter(pedido => {
-      const matchEstado = !this.filtroEstado || pedido.estado === this.filtroEstado;
-      const matchCliente = !this.filtroClienteId || pedido.clienteId === this.filtroClienteId;
-      return matchEstado && matchCliente;
-    });
+    this.cargarPedidos();
   }
 
   formatDate(dateString: string): string {
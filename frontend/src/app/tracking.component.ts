@@ -1,5 +1,6 @@
-import { Component, OnInit } from '@angular/core';
-import { TrackingService, ConsistencyCheck } from './tracking.service';
+import { Component, OnDestroy, OnInit } from '@angular/core';
+import { Subscription } from 'rxjs';
+import { TrackingService, ConsistencyCheck, TrackingInfo } from './tracking.service';
 import { AuthService } from './auth.service';
 import { CommonModule } from '@angular/common';
 import { FormsModule } from '@angular/forms';
@@ -64,6 +65,9 @@ import { FormsModule } from '@angular/forms';
           <div class="estado-descripcion">
             {{ getDescripcionEstado(estadoActual) }}
           </div>
+          <div *ngIf="streamPedido" class="last-check">
+            <small>🟢 En vivo: el estado se actualiza automáticamente</small>
+          </div>
         </div>
         
         <div *ngIf="error" class="error-message">
@@ -71,6 +75,62 @@ import { FormsModule } from '@angular/forms';
         </div>
       </div>
 
+      <!-- Consulta de varios pedidos -->
+      <div class="card">
+        <h3>Consultar Varios Pedidos</h3>
+        <form (ngSubmit)="consultarLote()" class="form">
+          <div class="input-group">
+            <label for="pedidoIdsLote">IDs de Pedidos *</label>
+            <input 
+              id="pedidoIdsLote" 
+              name="pedidoIdsLote" 
+              type="text" 
+              [(ngModel)]="pedidoIdsLote" 
+              placeholder="Ej: 1, 2, 3"
+            />
+          </div>
+          <button 
+            type="submit" 
+            class="btn-primary" 
+            [disabled]="!pedidoIdsLote.trim() || consultandoLote"
+          >
+            {{ consultandoLote ? 'Consultando...' : 'Consultar Pedidos' }}
+          </button>
+        </form>
+
+        <div *ngIf="errorLote" class="error-message">
+          <strong>Error:</strong> {{ errorLote }}
+        </div>
+
+        <table *ngIf="resultadosLote.length > 0" class="tracking-table">
+          <thead>
+            <tr>
+              <th>Pedido ID</th>
+              <th>Estado</th>
+              <th>Última actualización</th>
+            </tr>
+          </thead>
+          <tbody>
+            <tr *ngFor="let info of resultadosLote">
+              <td>{{ info.pedidoId }}</td>
+              <td>
+                <span class="estado-badge estado-badge-sm" [class]="'estado-' + info.estado.toLowerCase()">
+                  {{ info.estado }}
+                </span>
+              </td>
+              <td>{{ formatDate(info.fechaActualizacion) }}</td>
+            </tr>
+          </tbody>
+        </table>
+
+        <div *ngIf="noEncontradosLote.length > 0" class="last-check">
+          <small>Sin información de tracking: {{ noEncontradosLote.join(', ') }}</small>
+        </div>
+        <div *ngIf="streamLote" class="last-check">
+          <small>🟢 En vivo: los estados se actualizan automáticamente</small>
+        </div>
+      </div>
+
       <!-- Resultado de verificación de consistencia -->
       <div class="card" *ngIf="consistencyCheck">
         <h3>Verificación de Consistencia</h3>
@@ -189,6 +249,24 @@ import { FormsModule } from '@angular/forms';
       letter-spacing: 1px;
     }
     
+    .estado-badge-sm {
+      padding: 0.25rem 0.75rem;
+      font-size: 0.85rem;
+    }
+    
+    .tracking-table {
+      width: 100%;
+      border-collapse: collapse;
+      margin-top: 1rem;
+    }
+    
+    .tracking-table th,
+    .tracking-table td {
+      padding: 0.5rem;
+      border-bottom: 1px solid #ddd;
+      text-align: left;
+    }
+    
     .estado-pendiente { background-color: #fff3cd; color: #856404; border: 2px solid #ffc107; }
     .estado-procesando { background-color: #d1ecf1; color: #0c5460; border: 2px solid #17a2b8; }
     .estado-enviado { background-color: #d4edda; color: #155724; border: 2px solid #28a745; }
@@ -306,13 +384,24 @@ import { FormsModule } from '@angular/forms';
     }
   `]
 })
-export class TrackingComponent implements OnInit {
+export class TrackingComponent implements OnInit, OnDestroy {
   pedidoId: number | null = null;
   estadoActual: string | null = null;
   pedidoIdConsultado: number | null = null;
   error: string | null = null;
   consultando = false;
   
+  // Consulta de varios pedidos
+  pedidoIdsLote = '';
+  resultadosLote: TrackingInfo[] = [];
+  noEncontradosLote: string[] = [];
+  errorLote: string | null = null;
+  consultandoLote = false;
+
+  // Actualizaciones en vivo (SSE) de los pedidos consultados
+  streamPedido: Subscription | null = null;
+  streamLote: Subscription | null = null;
+  
   // Verificación de consistencia
   consistencyCheck: ConsistencyCheck | null = null;
   
@@ -332,6 +421,11 @@ export class TrackingComponent implements OnInit {
     this.verificarRoles();
   }
 
+  ngOnDestroy() {
+    this.streamPedido?.unsubscribe();
+    this.streamLote?.unsubscribe();
+  }
+
   verificarRoles() {
     const userInfo = this.authService.getUserInfo();
     this.isAdmin = userInfo?.role === 'ROLE_ADMIN';
@@ -346,12 +440,15 @@ export class TrackingComponent implements OnInit {
     this.consultando = true;
     this.error = null;
     this.estadoActual = null;
+    this.streamPedido?.unsubscribe();
+    this.streamPedido = null;
 
     this.trackingService.getEstadoPedido(this.pedidoId).subscribe({
       next: (estado) => {
         this.estadoActual = estado;
         this.pedidoIdConsultado = this.pedidoId;
         this.consultando = false;
+        this.escucharPedido(this.pedidoIdConsultado!);
       },
       error: (error) => {
         console.error('Error al consultar estado:', error);
@@ -367,6 +464,41 @@ export class TrackingComponent implements OnInit {
     });
   }
 
+  consultarLote() {
+    const ids = this.pedidoIdsLote
+      .split(/[\s,;]+/)
+      .map(id => id.trim())
+      .filter(id => /^\d+$/.test(id));
+
+    if (ids.length === 0) {
+      this.errorLote = 'Por favor ingresa al menos un ID de pedido válido';
+      return;
+    }
+
+    this.consultandoLote = true;
+    this.errorLote = null;
+    this.resultadosLote = [];
+    this.noEncontradosLote = [];
+    this.streamLote?.unsubscribe();
+    this.streamLote = null;
+
+    this.trackingService.getEstadosPedidos(ids).subscribe({
+      next: (resultado) => {
+        this.resultadosLote = Object.values(resultado.encontrados);
+        this.noEncontradosLote = resultado.noEncontrados;
+        this.consultandoLote = false;
+        this.escucharLote(ids);
+      },
+      error: (error) => {
+        console.error('Error al consultar pedidos:', error);
+        this.errorLote = error.status === 400 && typeof error.error === 'string'
+          ? error.error
+          : 'Error al consultar el estado de los pedidos';
+        this.consultandoLote = false;
+      }
+    });
+  }
+
   actualizarEstado() {
     if (!this.adminPedidoId || !this.nuevoEstado) {
       alert('Por favor completa todos los campos');
@@ -377,16 +509,11 @@ export class TrackingComponent implements OnInit {
 
     this.trackingService.actualizarEstadoPedido(this.adminPedidoId, this.nuevoEstado).subscribe({
       next: () => {
+        // Si se está consultando el mismo pedido, la vista se actualiza por el stream
         alert('Estado actualizado exitosamente');
         this.adminPedidoId = null;
         this.nuevoEstado = '';
         this.actualizando = false;
-        
-        // Si estamos consultando el mismo pedido, actualizar la vista
-        if (this.pedidoIdConsultado === this.adminPedidoId) {
-          this.pedidoId = this.adminPedidoId;
-          this.consultarEstado();
-        }
       },
       error: (error) => {
         console.error('Error al actualizar estado:', error);
@@ -396,6 +523,41 @@ export class TrackingComponent implements OnInit {
     });
   }
 
+  /**
+   * Mantiene actualizado el pedido consultado con los cambios recibidos por SSE
+   */
+  private escucharPedido(pedidoId: number) {
+    this.streamPedido = this.trackingService.streamEstados([pedidoId]).subscribe({
+      next: (info) => this.estadoActual = info.estado,
+      error: (error) => {
+        console.error('Error en stream de tracking:', error);
+        this.streamPedido = null;
+      }
+    });
+  }
+
+  /**
+   * Mantiene actualizada la tabla de varios pedidos; un pedido sin tracking
+   * pasa a la tabla en cuanto recibe su primer estado
+   */
+  private escucharLote(ids: string[]) {
+    this.streamLote = this.trackingService.streamEstados(ids).subscribe({
+      next: (info) => {
+        const indice = this.resultadosLote.findIndex(r => r.pedidoId === info.pedidoId);
+        if (indice >= 0) {
+          this.resultadosLote[indice] = info;
+        } else {
+          this.resultadosLote = [...this.resultadosLote, info];
+          this.noEncontradosLote = this.noEncontradosLote.filter(id => id !== info.pedidoId);
+        }
+      },
+      error: (error) => {
+        console.error('Error en stream de tracking:', error);
+        this.streamLote = null;
+      }
+    });
+  }
+
   verificarConsistencia() {
     if (!this.pedidoId) {
       this.error = 'Por favor ingresa un ID de pedido válido';
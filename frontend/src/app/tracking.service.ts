@@ -1,4 +1,4 @@
-import { Injectable } from '@angular/core';
+import { Injectable, NgZone } from '@angular/core';
 import { HttpClient } from '@angular/common/http';
 import { Observable, forkJoin } from 'rxjs';
 import { map, switchMap } from 'rxjs/operators';
@@ -8,6 +8,17 @@ export interface TrackingUpdate {
   estado: string;
 }
 
+export interface TrackingInfo {
+  pedidoId: string;
+  estado: string;
+  fechaActualizacion: string;
+}
+
+export interface TrackingBatchResult {
+  encontrados: { [pedidoId: string]: TrackingInfo };
+  noEncontrados: string[];
+}
+
 export interface ConsistencyCheck {
   pedidoId: number;
   estadoMySQL: string;
@@ -21,7 +32,11 @@ export class TrackingService {
   private apiUrl = '/api/tracking';
   private pedidoApiUrl = '/api/pedidos';
 
-  constructor(private http: HttpClient) {}
+  // Espera antes de reconectar un stream cortado (se duplica hasta el máximo)
+  private static readonly RECONEXION_INICIAL_MS = 1000;
+  private static readonly RECONEXION_MAXIMA_MS = 30000;
+
+  constructor(private http: HttpClient, private zone: NgZone) {}
 
   /**
    * Obtener estado de tracking por ID de pedido (desde Redis)
@@ -32,6 +47,107 @@ export class TrackingService {
     );
   }
 
+  /**
+   * Obtener estado de tracking de varios pedidos en una sola consulta (desde Redis)
+   */
+  getEstadosPedidos(pedidoIds: (string | number)[]): Observable<TrackingBatchResult> {
+    return this.http.post<TrackingBatchResult>(`${this.apiUrl}/batch`, pedidoIds.map(id => String(id)));
+  }
+
+  /**
+   * Recibir en vivo el estado de los pedidos (SSE). Emite primero el estado actual de
+   * cada pedido y después cada cambio; reconecta si la conexión se corta y se cierra
+   * al cancelar la suscripción. Reemplaza la consulta periódica de cada pedido.
+   */
+  streamEstados(pedidoIds: (string | number)[]): Observable<TrackingInfo> {
+    const ids = pedidoIds.map(id => encodeURIComponent(String(id))).join(',');
+    return this.stream(`${this.apiUrl}/stream?pedidoIds=${ids}`);
+  }
+
+  /**
+   * Recibir en vivo el estado de los pedidos de un cliente (SSE)
+   */
+  streamEstadosCliente(clienteId: number): Observable<TrackingInfo> {
+    return this.stream(`${this.apiUrl}/stream/cliente/${clienteId}`);
+  }
+
+  /**
+   * EventSource no permite enviar el header Authorization, por lo que el stream se lee
+   * con fetch para no exponer el token en la URL
+   */
+  private stream(url: string): Observable<TrackingInfo> {
+    return new Observable<TrackingInfo>(subscriber => {
+      const abort = new AbortController();
+      let espera = TrackingService.RECONEXION_INICIAL_MS;
+      let reintento: ReturnType<typeof setTimeout> | undefined;
+
+      const conectar = async () => {
+        try {
+          const token = localStorage.getItem('access_token');
+          const response = await fetch(url, {
+            headers: {
+              Accept: 'text/event-stream',
+              ...(token ? { Authorization: `Bearer ${token}` } : {})
+            },
+            signal: abort.signal
+          });
+          if (!response.ok || !response.body) {
+            // Los rechazos (400, 401, 403) no se corrigen reconectando
+            if (response.status < 500) {
+              subscriber.error({ status: response.status });
+              return;
+            }
+            throw new Error(`HTTP ${response.status}`);
+          }
+
+          espera = TrackingService.RECONEXION_INICIAL_MS;
+          const reader = response.body.pipeThrough(new TextDecoderStream()).getReader();
+          let pendiente = '';
+          while (true) {
+            const { value, done } = await reader.read();
+            if (done) break;
+            pendiente += value;
+            let fin: number;
+            while ((fin = pendiente.indexOf('\n\n')) >= 0) {
+              this.procesarEvento(pendiente.substring(0, fin), subscriber);
+              pendiente = pendiente.substring(fin + 2);
+            }
+          }
+        } catch (error) {
+          if (abort.signal.aborted) return;
+          console.warn('⚠️ Stream de tracking interrumpido:', error);
+        }
+        if (!abort.signal.aborted && !subscriber.closed) {
+          reintento = setTimeout(conectar, espera);
+          espera = Math.min(espera * 2, TrackingService.RECONEXION_MAXIMA_MS);
+        }
+      };
+
+      conectar();
+      return () => {
+        abort.abort();
+        clearTimeout(reintento);
+      };
+    });
+  }
+
+  private procesarEvento(bloque: string, subscriber: { next: (info: TrackingInfo) => void }) {
+    let evento = 'message';
+    let data = '';
+    for (const linea of bloque.split('\n')) {
+      if (linea.startsWith('event:')) {
+        evento = linea.substring(6).trim();
+      } else if (linea.startsWith('data:')) {
+        data += linea.substring(5);
+      }
+    }
+    // Las líneas de comentario (heartbeat) no traen datos
+    if (evento === 'estado' && data) {
+      const info = JSON.parse(data) as TrackingInfo;
+      this.zone.run(() => subscriber.next(info));
+    }
+  }
+
   /**
    * Obtener estado de pedido desde MySQL
    */
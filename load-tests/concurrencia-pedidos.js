@@ -0,0 +1,81 @@
+// Prueba de carga para comparar el modo con hilos de plataforma y el perfil virtual-threads.
+//
+// Uso:
+//   k6 run -e TOKEN=<jwt> -e CLIENTE_ID=1 -e MODO=plataforma load-tests/concurrencia-pedidos.js
+//   k6 run -e TOKEN=<jwt> -e CLIENTE_ID=1 -e MODO=virtual    load-tests/concurrencia-pedidos.js
+//
+// Variables opcionales: PEDIDO_URL, TRACKING_URL, MAX_VUS (10000 por defecto), MESETA (5m).
+// Al terminar se consultan las métricas de actuator de cada servicio (memoria e hilos)
+// para comparar ambos modos junto con el throughput y las latencias que reporta k6.
+import http from 'k6/http';
+import { check, sleep } from 'k6';
+
+const PEDIDO_URL = __ENV.PEDIDO_URL || 'http://localhost:8083';
+const TRACKING_URL = __ENV.TRACKING_URL || 'http://localhost:8084';
+const TOKEN = __ENV.TOKEN;
+const CLIENTE_ID = Number(__ENV.CLIENTE_ID || 1);
+const MAX_VUS = Number(__ENV.MAX_VUS || 10000);
+const MODO = __ENV.MODO || 'sin-etiqueta';
+
+export const options = {
+  scenarios: {
+    clientes_concurrentes: {
+      executor: 'ramping-vus',
+      startVUs: 0,
+      stages: [
+        { duration: '2m', target: MAX_VUS },
+        { duration: __ENV.MESETA || '5m', target: MAX_VUS },
+        { duration: '1m', target: 0 },
+      ],
+      gracefulRampDown: '30s',
+    },
+  },
+  tags: { modo: MODO },
+  summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+};
+
+const METRICAS_JVM = ['jvm.memory.used', 'jvm.threads.live', 'jvm.threads.peak', 'process.cpu.usage'];
+
+function cabeceras() {
+  return { headers: { Authorization: `Bearer ${TOKEN}`, 'Content-Type': 'application/json' } };
+}
+
+export function setup() {
+  if (!TOKEN) {
+    throw new Error('Falta la variable TOKEN (JWT con rol ADMIN o CLIENTE)');
+  }
+}
+
+export default function () {
+  const creado = http.post(`${PEDIDO_URL}/api/pedidos`, JSON.stringify({
+    producto: `Carga ${MODO} ${__VU}-${__ITER}`,
+    clienteId: CLIENTE_ID,
+    direccion: 'Calle de prueba 123',
+  }), Object.assign(cabeceras(), { tags: { operacion: 'crear-pedido' } }));
+  check(creado, { 'pedido creado': (r) => r.status === 201 });
+
+  if (creado.status === 201) {
+    const id = creado.json('id');
+    const pedido = http.get(`${PEDIDO_URL}/api/pedidos/${id}`,
+      Object.assign(cabeceras(), { tags: { operacion: 'obtener-pedido', name: 'GET /api/pedidos/{id}' } }));
+    check(pedido, { 'pedido obtenido': (r) => r.status === 200 });
+
+    const tracking = http.get(`${TRACKING_URL}/api/tracking/${id}`,
+      Object.assign(cabeceras(), { tags: { operacion: 'consultar-tracking', name: 'GET /api/tracking/{id}' } }));
+    check(tracking, { 'tracking consultado': (r) => r.status === 200 || r.status === 404 });
+  }
+
+  sleep(1);
+}
+
+export function teardown() {
+  for (const [servicio, url] of [['pedido-service', PEDIDO_URL], ['tracking-service', TRACKING_URL]]) {
+    for (const metrica of METRICAS_JVM) {
+      const respuesta = http.get(`${url}/actuator/metrics/${metrica}`);
+      if (respuesta.status === 200) {
+        const valor = respuesta.json('measurements.0.value');
+        console.log(`[${MODO}] ${servicio} ${metrica} = ${valor}`);
+      }
+    }
+  }
+}
@@ -0,0 +1,73 @@
+-- Benchmark de los índices de listados de pedidos (migración V3) con 10M de filas.
+--
+-- Uso (base desechable, no toca pedido_db):
+--   docker exec -i mysql-pedido mysql -uroot -proot_pass < load-tests/indices-pedidos.sql
+--
+-- Crea pedido_benchmark con el esquema de V1, carga 10M de pedidos repartidos entre
+-- 100.000 clientes y 5 estados, y mide con EXPLAIN ANALYZE las consultas de listado
+-- (primera página y página profunda) sin los índices y con ellos.
+DROP DATABASE IF EXISTS pedido_benchmark;
+CREATE DATABASE pedido_benchmark;
+USE pedido_benchmark;
+
+CREATE TABLE pedidos (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    producto VARCHAR(255) NOT NULL,
+    cliente_id BIGINT NOT NULL,
+    direccion VARCHAR(255) NOT NULL,
+    estado VARCHAR(255) NOT NULL,
+    fecha_creacion DATETIME(6) NOT NULL,
+    fecha_actualizacion DATETIME(6) NOT NULL,
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE digitos (d INT NOT NULL PRIMARY KEY);
+INSERT INTO digitos VALUES (0), (1), (2), (3), (4), (5), (6), (7), (8), (9);
+
+-- 10^7 filas en lotes de 10^6 para no agotar el undo log
+DROP PROCEDURE IF EXISTS cargar_pedidos;
+DELIMITER //
+CREATE PROCEDURE cargar_pedidos()
+BEGIN
+    DECLARE lote INT DEFAULT 0;
+    WHILE lote < 10 DO
+        INSERT INTO pedidos (producto, cliente_id, direccion, estado, fecha_creacion, fecha_actualizacion)
+        SELECT CONCAT('Producto ', n % 1000),
+               1 + (n * 7919) % 100000,
+               CONCAT('Calle ', n % 5000),
+               ELT(1 + n % 5, 'PENDIENTE', 'PROCESANDO', 'ENVIADO', 'ENTREGADO', 'CANCELADO'),
+               TIMESTAMP('2024-01-01') + INTERVAL n SECOND,
+               TIMESTAMP('2024-01-01') + INTERVAL n SECOND
+        FROM (SELECT lote * 1000000 + a.d + b.d * 10 + c.d * 100 + e.d * 1000 + f.d * 10000 + g.d * 100000 AS n
+              FROM digitos a, digitos b, digitos c, digitos e, digitos f, digitos g) numeros
+        ORDER BY n;
+        COMMIT;
+        SET lote = lote + 1;
+    END WHILE;
+END //
+DELIMITER ;
+
+SET autocommit = 0;
+CALL cargar_pedidos();
+SET autocommit = 1;
+ANALYZE TABLE pedidos;
+
+-- Sin índices: recorrido de la clave primaria filtrando fila a fila
+EXPLAIN ANALYZE SELECT id, producto, cliente_id, estado, fecha_actualizacion, direccion, fecha_creacion
+FROM pedidos WHERE cliente_id = 4242 AND id < 9223372036854775807 ORDER BY id DESC LIMIT 51;
+EXPLAIN ANALYZE SELECT id, producto, cliente_id, estado, fecha_actualizacion, direccion, fecha_creacion
+FROM pedidos WHERE estado = 'ENVIADO' AND id < 9223372036854775807 ORDER BY id DESC LIMIT 51;
+EXPLAIN ANALYZE SELECT id, producto, cliente_id, estado, fecha_actualizacion, direccion, fecha_creacion
+FROM pedidos WHERE estado = 'ENVIADO' AND id < 1000000 ORDER BY id DESC LIMIT 51;
+
+-- Índices de la migración V3
+CREATE INDEX idx_pedidos_cliente_id ON pedidos (cliente_id, id);
+CREATE INDEX idx_pedidos_estado_id ON pedidos (estado, id);
+ANALYZE TABLE pedidos;
+
+EXPLAIN ANALYZE SELECT id, producto, cliente_id, estado, fecha_actualizacion, direccion, fecha_creacion
+FROM pedidos WHERE cliente_id = 4242 AND id < 9223372036854775807 ORDER BY id DESC LIMIT 51;
+EXPLAIN ANALYZE SELECT id, producto, cliente_id, estado, fecha_actualizacion, direccion, fecha_creacion
+FROM pedidos WHERE estado = 'ENVIADO' AND id < 9223372036854775807 ORDER BY id DESC LIMIT 51;
+EXPLAIN ANALYZE SELECT id, producto, cliente_id, estado, fecha_actualizacion, direccion, fecha_creacion
+FROM pedidos WHERE estado = 'ENVIADO' AND id < 1000000 ORDER BY id DESC LIMIT 51;
@@ -0,0 +1,80 @@
+// Benchmark de throughput de inserción de pedidos.
+//
+// Uso:
+//   k6 run -e TOKEN=<jwt> -e MODO=individual load-tests/insercion-pedidos.js
+//   k6 run -e TOKEN=<jwt> -e MODO=bulk       load-tests/insercion-pedidos.js
+//
+// MODO=individual crea cada pedido con POST /api/pedidos (un INSERT por petición, como
+// en las importaciones anteriores); MODO=bulk envía lotes a POST /api/pedidos/bulk,
+// que inserta con batching JDBC. Para medir el efecto de la generación de ids, ejecutar
+// el modo bulk sobre esta versión y sobre una compilada con GenerationType.IDENTITY.
+//
+// Variables opcionales: PEDIDO_URL, CLIENTE_ID (1), TOTAL (200000), LOTE (5000), VUS (4).
+// El resultado principal es la métrica pedidos_insertados (total y por segundo).
+import http from 'k6/http';
+import { check } from 'k6';
+import { Counter } from 'k6/metrics';
+
+const PEDIDO_URL = __ENV.PEDIDO_URL || 'http://localhost:8083';
+const TOKEN = __ENV.TOKEN;
+const CLIENTE_ID = Number(__ENV.CLIENTE_ID || 1);
+const MODO = __ENV.MODO || 'bulk';
+const TOTAL = Number(__ENV.TOTAL || 200000);
+const LOTE = MODO === 'bulk' ? Number(__ENV.LOTE || 5000) : 1;
+const VUS = Number(__ENV.VUS || 4);
+
+const pedidosInsertados = new Counter('pedidos_insertados');
+
+export const options = {
+  scenarios: {
+    importacion: {
+      executor: 'shared-iterations',
+      vus: VUS,
+      iterations: Math.ceil(TOTAL / LOTE),
+      maxDuration: '6h',
+    },
+  },
+  tags: { modo: MODO },
+  summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+};
+
+function cabeceras(operacion) {
+  return {
+    headers: { Authorization: `Bearer ${TOKEN}`, 'Content-Type': 'application/json' },
+    tags: { operacion: operacion },
+    timeout: '120s',
+  };
+}
+
+function pedido(numero) {
+  return { producto: `Importación ${MODO} ${numero}`, clienteId: CLIENTE_ID, direccion: 'Calle de prueba 123' };
+}
+
+export function setup() {
+  if (!TOKEN) {
+    throw new Error('Falta la variable TOKEN (JWT con rol ADMIN)');
+  }
+}
+
+export default function () {
+  const inicio = __ITER * LOTE;
+
+  if (MODO === 'bulk') {
+    const lote = [];
+    for (let i = 0; i < LOTE && inicio + i < TOTAL; i++) {
+      lote.push(pedido(inicio + i));
+    }
+    const respuesta = http.post(`${PEDIDO_URL}/api/pedidos/bulk`, JSON.stringify(lote), cabeceras('crear-lote'));
+    check(respuesta, { 'lote creado': (r) => r.status === 200 && r.json('rechazados').length === 0 });
+    if (respuesta.status === 200) {
+      pedidosInsertados.add(respuesta.json('creados'));
+    }
+    return;
+  }
+
+  const respuesta = http.post(`${PEDIDO_URL}/api/pedidos`, JSON.stringify(pedido(inicio)), cabeceras('crear-pedido'));
+  check(respuesta, { 'pedido creado': (r) => r.status === 201 });
+  if (respuesta.status === 201) {
+    pedidosInsertados.add(1);
+  }
+}
@@ -0,0 +1,52 @@
+package com.proyecto.pedidoservice.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.task.SimpleAsyncTaskExecutorBuilder;
+import org.springframework.boot.task.ThreadPoolTaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Pools de hilos del servicio.
+ *
+ * La persistencia de pedidos nuevos usa un pool acotado propio: al llenarse la cola la
+ * tarea se rechaza (el controlador responde 503) en lugar de acumular memoria, y al
+ * detenerse el servicio se esperan las tareas en curso. Al ser un bean, actuator publica
+ * sus métricas ({@code executor.*} con {@code name=persistenciaPedidosExecutor}).
+ */
+@Configuration
+public class EjecutoresConfig {
+
+    public static final String PERSISTENCIA_PEDIDOS = "persistenciaPedidosExecutor";
+
+    @Bean(name = PERSISTENCIA_PEDIDOS)
+    public ThreadPoolTaskExecutor persistenciaPedidosExecutor(
+            @Value("${pedido.creacion.hilos:10}") int hilos,
+            @Value("${pedido.creacion.cola:500}") int cola,
+            @Value("${pedido.creacion.espera-apagado-s:30}") int esperaApagadoS) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(hilos);
+        executor.setMaxPoolSize(hilos);
+        executor.setQueueCapacity(cola);
+        executor.setThreadNamePrefix("pedido-persistencia-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(esperaApagadoS);
+        return executor;
+    }
+
+    /**
+     * Ejecutor por defecto de Spring Boot (@Async y peticiones asíncronas de MVC). Se declara
+     * aquí porque cualquier otro Executor registrado desactiva el auto-configurado; respeta
+     * spring.task.execution.* y el perfil virtual-threads igual que el original.
+     */
+    @Bean(name = {"applicationTaskExecutor", "taskExecutor"})
+    public AsyncTaskExecutor applicationTaskExecutor(ThreadPoolTaskExecutorBuilder threadPoolBuilder,
+                                                     SimpleAsyncTaskExecutorBuilder virtualBuilder,
+                                                     Environment environment) {
+        return Threading.VIRTUAL.isActive(environment) ? virtualBuilder.build() : threadPoolBuilder.build();
+    }
+}
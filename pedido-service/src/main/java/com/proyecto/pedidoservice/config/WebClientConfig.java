@@ -0,0 +1,61 @@
+package com.proyecto.pedidoservice.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Cliente HTTP no bloqueante para las llamadas entre microservicios que no deben retener
+ * hilos. Aplica sobre Reactor Netty los mismos límites {@code http.interservicios.*} que el
+ * RestTemplate compartido de common-http y publica las métricas del pool
+ * ({@code reactor.netty.connection.provider.*}).
+ */
+@Configuration
+public class WebClientConfig {
+
+    @Value("${http.interservicios.max-conexiones-por-ruta:50}")
+    private int maxConexionesPorRuta;
+
+    @Value("${http.interservicios.timeout-conexion-ms:2000}")
+    private long timeoutConexionMs;
+
+    @Value("${http.interservicios.timeout-lectura-ms:10000}")
+    private long timeoutLecturaMs;
+
+    @Value("${http.interservicios.timeout-pool-ms:2000}")
+    private long timeoutPoolMs;
+
+    @Value("${http.interservicios.conexion-inactiva-s:30}")
+    private long conexionInactivaS;
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider conexionesReactivasInterservicios() {
+        return ConnectionProvider.builder("interservicios")
+            .maxConnections(maxConexionesPorRuta)
+            .pendingAcquireTimeout(Duration.ofMillis(timeoutPoolMs))
+            .maxIdleTime(Duration.ofSeconds(conexionInactivaS))
+            .evictInBackground(Duration.ofSeconds(conexionInactivaS))
+            .metrics(true)
+            .build();
+    }
+
+    /**
+     * WebClient no bloqueante; se construye con el WebClient.Builder de Spring Boot
+     * para que quede instrumentado con las métricas de cliente HTTP
+     */
+    @Bean
+    public WebClient webClient(WebClient.Builder builder, ConnectionProvider conexionesReactivasInterservicios) {
+        HttpClient httpClient = HttpClient.create(conexionesReactivasInterservicios)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) timeoutConexionMs)
+            .responseTimeout(Duration.ofMillis(timeoutLecturaMs));
+
+        return builder.clientConnector(new ReactorClientHttpConnector(httpClient)).build();
+    }
+}
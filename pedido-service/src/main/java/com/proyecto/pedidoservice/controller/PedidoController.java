@@ -1,17 +1,31 @@
 package com.proyecto.pedidoservice.controller;
 
+import com.proyecto.pedidoservice.dto.CambioEstadoPedido;
+import com.proyecto.pedidoservice.dto.PaginaPedidos;
+import com.proyecto.pedidoservice.dto.SincronizacionEstadoRequest;
 import com.proyecto.pedidoservice.model.Pedido;
+import com.proyecto.pedidoservice.service.ClienteValidacionService;
 import com.proyecto.pedidoservice.service.PedidoService;
+import com.proyecto.pedidoservice.service.SyncJobService;
+import com.proyecto.pedidoservice.service.TrackingQueueService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import jakarta.validation.Valid;
 
+import java.net.URI;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Controlador REST para gestión de pedidos
@@ -21,10 +35,21 @@ import java.util.Optional;
 @CrossOrigin(origins = "http://localhost:4200")
 public class PedidoController {
     private final PedidoService pedidoService;
+    private final SyncJobService syncJobService;
+    private final TrackingQueueService trackingQueueService;
+    private final ClienteValidacionService clienteValidacionService;
+
+    @Value("${pedido.creacion.retry-after-s:1}")
+    private long retryAfterS;
 
     @Autowired
-    public PedidoController(PedidoService pedidoService) {
+    public PedidoController(PedidoService pedidoService, SyncJobService syncJobService,
+                            TrackingQueueService trackingQueueService,
+                            ClienteValidacionService clienteValidacionService) {
         this.pedidoService = pedidoService;
+        this.syncJobService = syncJobService;
+        this.trackingQueueService = trackingQueueService;
+        this.clienteValidacionService = clienteValidacionService;
     }
 
     /**
@@ -32,25 +57,60 @@ public class PedidoController {
      */
     @PostMapping
     @PreAuthorize("hasAnyRole('ADMIN', 'CLIENTE')")
-    public ResponseEntity<?> crearPedido(@Valid @RequestBody Pedido pedido) {
-        try {
-            Pedido nuevoPedido = pedidoService.crearPedido(pedido);
-            return ResponseEntity.status(HttpStatus.CREATED).body(nuevoPedido);
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Error al crear pedido: " + e.getMessage());
-        }
+    public CompletableFuture<ResponseEntity<?>> crearPedido(@Valid @RequestBody Pedido pedido) {
+        return pedidoService.crearPedido(pedido)
+                .<ResponseEntity<?>>thenApply(nuevoPedido -> ResponseEntity.status(HttpStatus.CREATED).body(nuevoPedido))
+                .exceptionally(e -> {
+                    Throwable causa = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (causa instanceof RejectedExecutionException) {
+                        return servicioSaturado();
+                    }
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                            .body("Error al crear pedido: " + causa.getMessage());
+                });
+    }
+
+    /**
+     * Crear pedidos en lote (importaciones)
+     */
+    @PostMapping("/bulk")
+    @PreAuthorize("hasAnyRole('ADMIN', 'SERVICE')")
+    public CompletableFuture<ResponseEntity<?>> crearPedidosLote(@RequestBody List<Pedido> pedidos) {
+        return pedidoService.crearPedidosLote(pedidos)
+                .<ResponseEntity<?>>thenApply(resultado -> ResponseEntity.ok(resultado))
+                .exceptionally(e -> {
+                    Throwable causa = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (causa instanceof IllegalArgumentException) {
+                        return ResponseEntity.badRequest().body(causa.getMessage());
+                    }
+                    if (causa instanceof RejectedExecutionException) {
+                        return servicioSaturado();
+                    }
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                            .body("Error al crear pedidos: " + causa.getMessage());
+                });
     }
 
     /**
-     * Obtener pedidos por cliente
+     * Respuesta cuando el pool de persistencia rechaza la tarea por estar lleno
+     */
+    private ResponseEntity<?> servicioSaturado() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterS))
+                .body("Servicio saturado, reintente más tarde");
+    }
+
+    /**
+     * Obtener pedidos por cliente (también tracking-service, para el stream SSE por cliente)
      */
     @GetMapping("/cliente/{clienteId}")
-    @PreAuthorize("hasAnyRole('ADMIN', 'CLIENTE')")
-    public ResponseEntity<?> obtenerPedidosPorCliente(@PathVariable Long clienteId) {
+    @PreAuthorize("hasAnyRole('ADMIN', 'CLIENTE', 'SERVICE')")
+    public ResponseEntity<?> obtenerPedidosPorCliente(@PathVariable Long clienteId,
+                                                      @RequestParam(required = false) Long cursor,
+                                                      @RequestParam(required = false) Integer limite) {
         try {
-            List<Pedido> pedidos = pedidoService.obtenerPedidosPorCliente(clienteId);
-            return ResponseEntity.ok(pedidos);
+            PaginaPedidos pagina = pedidoService.listarPedidos(clienteId, null, cursor, limite);
+            return ResponseEntity.ok(pagina);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body("Error al obtener pedidos: " + e.getMessage());
@@ -62,10 +122,12 @@ public class PedidoController {
      */
     @GetMapping("/estado/{estado}")
     @PreAuthorize("hasAnyRole('ADMIN', 'CLIENTE')")
-    public ResponseEntity<?> obtenerPedidosPorEstado(@PathVariable String estado) {
+    public ResponseEntity<?> obtenerPedidosPorEstado(@PathVariable String estado,
+                                                     @RequestParam(required = false) Long cursor,
+                                                     @RequestParam(required = false) Integer limite) {
         try {
-            List<Pedido> pedidos = pedidoService.obtenerPedidosPorEstado(estado);
-            return ResponseEntity.ok(pedidos);
+            PaginaPedidos pagina = pedidoService.listarPedidos(null, estado, cursor, limite);
+            return ResponseEntity.ok(pagina);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body("Error al obtener pedidos por estado: " + e.getMessage());
@@ -93,10 +155,15 @@ public class PedidoController {
      */
     @PutMapping("/{id}/estado")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<?> actualizarEstadoPedido(@PathVariable Long id, @RequestParam String estado) {
+    public ResponseEntity<?> actualizarEstadoPedido(@PathVariable Long id, @RequestParam String estado,
+                                                    @RequestParam(required = false) Long version) {
         try {
-            Pedido actualizado = pedidoService.actualizarEstadoPedido(id, estado);
-            return ResponseEntity.ok(actualizado);
+            CambioEstadoPedido cambio = pedidoService.actualizarEstadoPedido(id, estado, version);
+            return ResponseEntity.ok(cambio);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
         } catch (Exception e) {
@@ -106,20 +173,36 @@ public class PedidoController {
     }
 
     /**
-     * Obtener todos los pedidos (solo admin)
+     * Listar pedidos paginados por cursor, con filtros opcionales (solo admin)
      */
     @GetMapping
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<?> obtenerTodosLosPedidos() {
+    public ResponseEntity<?> listarPedidos(@RequestParam(required = false) Long clienteId,
+                                           @RequestParam(required = false) String estado,
+                                           @RequestParam(required = false) Long cursor,
+                                           @RequestParam(required = false) Integer limite) {
         try {
-            List<Pedido> pedidos = pedidoService.obtenerTodosLosPedidos();
-            return ResponseEntity.ok(pedidos);
+            PaginaPedidos pagina = pedidoService.listarPedidos(clienteId, estado, cursor, limite);
+            return ResponseEntity.ok(pagina);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body("Error al obtener pedidos: " + e.getMessage());
         }
     }
 
+    /**
+     * Exportar pedidos como NDJSON en streaming, con filtros opcionales (solo admin)
+     */
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportarPedidos(@RequestParam(required = false) Long clienteId,
+                                                                 @RequestParam(required = false) String estado) {
+        StreamingResponseBody cuerpo = salida -> pedidoService.exportarPedidosNdjson(clienteId, estado, salida);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(cuerpo);
+    }
+
     /**
      * Comparar discrepancias entre MySQL y Redis (solo admin)
      */
@@ -135,6 +218,18 @@ public class PedidoController {
         }
     }
 
+    /**
+     * Exportar todas las discrepancias MySQL vs Redis como NDJSON (una línea por discrepancia y una final con el resumen)
+     */
+    @GetMapping(value = "/compare-tracking/stream", produces = "application/x-ndjson")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportarDiscrepancias() {
+        StreamingResponseBody cuerpo = pedidoService::exportarDiscrepanciasNdjson;
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(cuerpo);
+    }
+
     /**
      * Sincronizar estado desde tracking-service hacia pedido
      */
@@ -147,13 +242,17 @@ public class PedidoController {
                 return ResponseEntity.badRequest().body("Estado es requerido");
             }
             
-            Pedido actualizado = pedidoService.actualizarEstadoPedido(id, nuevoEstado);
+            CambioEstadoPedido cambio = pedidoService.actualizarEstadoPedido(id, nuevoEstado, null);
             return ResponseEntity.ok(Map.of(
                 "message", "Pedido sincronizado desde tracking", 
                 "pedidoId", id, 
                 "estado", nuevoEstado,
-                "pedido", actualizado
+                "cambio", cambio
             ));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
         } catch (Exception e) {
@@ -163,20 +262,103 @@ public class PedidoController {
     }
 
     /**
-     * Sincronizar todos los pedidos inconsistentes
+     * Sincronizar por lotes los estados notificados por tracking-service
+     */
+    @PutMapping("/sync-from-tracking/batch")
+    @PreAuthorize("hasAnyRole('ADMIN','SERVICE')")
+    public ResponseEntity<?> sincronizarLoteDesdeTracking(@RequestBody List<SincronizacionEstadoRequest> actualizaciones) {
+        try {
+            Map<String, Object> resultado = pedidoService.sincronizarLoteDesdeTracking(actualizaciones);
+            return ResponseEntity.ok(resultado);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error al sincronizar lote desde tracking: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sincronizar todos los pedidos inconsistentes (inicia un trabajo asíncrono)
      */
     @PostMapping("/sync-all")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<?> sincronizarTodos() {
+        return iniciarSyncJob();
+    }
+
+    /**
+     * Iniciar un trabajo de sincronización masiva MySQL → Redis
+     */
+    @PostMapping("/sync-jobs")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> iniciarSyncJob() {
         try {
-            Map<String, Object> resultado = pedidoService.sincronizarTodosLosPedidos();
-            return ResponseEntity.ok(resultado);
+            SyncJobService.SyncJob job = syncJobService.iniciar();
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .location(URI.create("/api/pedidos/sync-jobs/" + job.getId()))
+                    .body(job.aMapa());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Error al sincronizar todos los pedidos: " + e.getMessage());
+                    .body("Error al iniciar la sincronización: " + e.getMessage());
         }
     }
 
+    /**
+     * Listar los trabajos de sincronización recientes
+     */
+    @GetMapping("/sync-jobs")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<Map<String, Object>>> listarSyncJobs() {
+        return ResponseEntity.ok(syncJobService.listar().stream().map(SyncJobService.SyncJob::aMapa).toList());
+    }
+
+    /**
+     * Consultar el progreso de un trabajo de sincronización
+     */
+    @GetMapping("/sync-jobs/{jobId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> obtenerSyncJob(@PathVariable String jobId) {
+        return syncJobService.obtener(jobId)
+                .<ResponseEntity<?>>map(job -> ResponseEntity.ok(job.aMapa()))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Cancelar un trabajo de sincronización en curso
+     */
+    @DeleteMapping("/sync-jobs/{jobId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> cancelarSyncJob(@PathVariable String jobId) {
+        Optional<SyncJobService.SyncJob> job = syncJobService.obtener(jobId);
+        if (job.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!syncJobService.cancelar(jobId)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("El trabajo de sincronización ya finalizó");
+        }
+        return ResponseEntity.accepted().body(job.get().aMapa());
+    }
+
+    /**
+     * Estadísticas del outbox de notificaciones hacia tracking-service
+     */
+    @GetMapping("/tracking-outbox/estadisticas")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<TrackingQueueService.ColaEstadisticas> obtenerEstadisticasOutbox() {
+        return ResponseEntity.ok(trackingQueueService.obtenerEstadisticas());
+    }
+
+    /**
+     * Invalidar un cliente en la caché de validación (notificado por cliente-service)
+     */
+    @PostMapping("/internal/clientes/{clienteId}/invalidar")
+    @PreAuthorize("hasAnyRole('ADMIN', 'SERVICE')")
+    public ResponseEntity<Void> invalidarCliente(@PathVariable Long clienteId) {
+        clienteValidacionService.invalidar(clienteId);
+        return ResponseEntity.noContent().build();
+    }
+
     /**
      * Reparar tracking faltante para un pedido específico
      */
@@ -0,0 +1,50 @@
+package com.proyecto.pedidoservice.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Resultado de un cambio de estado aplicado con una actualización condicional
+ */
+public class CambioEstadoPedido {
+
+    private final Long pedidoId;
+
+    private final String estado;
+
+    private final LocalDateTime fechaActualizacion;
+
+    // Versión del pedido tras el cambio (la actual si no se aplicó)
+    private final Long version;
+
+    // false si el pedido ya estaba en el estado solicitado
+    private final boolean aplicado;
+
+    public CambioEstadoPedido(Long pedidoId, String estado, LocalDateTime fechaActualizacion, Long version,
+                              boolean aplicado) {
+        this.pedidoId = pedidoId;
+        this.estado = estado;
+        this.fechaActualizacion = fechaActualizacion;
+        this.version = version;
+        this.aplicado = aplicado;
+    }
+
+    public Long getPedidoId() {
+        return pedidoId;
+    }
+
+    public String getEstado() {
+        return estado;
+    }
+
+    public LocalDateTime getFechaActualizacion() {
+        return fechaActualizacion;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public boolean isAplicado() {
+        return aplicado;
+    }
+}
@@ -0,0 +1,36 @@
+package com.proyecto.pedidoservice.dto;
+
+import com.proyecto.pedidoservice.repository.PedidoListado;
+
+import java.util.List;
+
+/**
+ * Página de un listado de pedidos paginado por cursor
+ */
+public class PaginaPedidos {
+
+    private final List<PedidoListado> items;
+
+    // Id a enviar como cursor para la página siguiente; null si no hay más
+    private final Long siguienteCursor;
+
+    private final int limite;
+
+    public PaginaPedidos(List<PedidoListado> items, Long siguienteCursor, int limite) {
+        this.items = items;
+        this.siguienteCursor = siguienteCursor;
+        this.limite = limite;
+    }
+
+    public List<PedidoListado> getItems() {
+        return items;
+    }
+
+    public Long getSiguienteCursor() {
+        return siguienteCursor;
+    }
+
+    public int getLimite() {
+        return limite;
+    }
+}
@@ -0,0 +1,51 @@
+package com.proyecto.pedidoservice.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO con el estado de un pedido notificado por tracking-service
+ */
+public class SincronizacionEstadoRequest {
+
+    private Long pedidoId;
+
+    private String estado;
+
+    // Momento en que tracking-service registró el estado
+    private LocalDateTime fechaActualizacion;
+
+    // Constructor por defecto
+    public SincronizacionEstadoRequest() {
+    }
+
+    public SincronizacionEstadoRequest(Long pedidoId, String estado, LocalDateTime fechaActualizacion) {
+        this.pedidoId = pedidoId;
+        this.estado = estado;
+        this.fechaActualizacion = fechaActualizacion;
+    }
+
+    // Getters y setters
+    public Long getPedidoId() {
+        return pedidoId;
+    }
+
+    public void setPedidoId(Long pedidoId) {
+        this.pedidoId = pedidoId;
+    }
+
+    public String getEstado() {
+        return estado;
+    }
+
+    public void setEstado(String estado) {
+        this.estado = estado;
+    }
+
+    public LocalDateTime getFechaActualizacion() {
+        return fechaActualizacion;
+    }
+
+    public void setFechaActualizacion(LocalDateTime fechaActualizacion) {
+        this.fechaActualizacion = fechaActualizacion;
+    }
+}
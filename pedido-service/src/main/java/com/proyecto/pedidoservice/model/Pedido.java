@@ -6,8 +6,11 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "pedidos")
 public class Pedido {
+    // Ids reservados por bloques desde pedidos_seq (tabla en MySQL): a diferencia de
+    // IDENTITY, Hibernate conoce el id antes del INSERT y puede agrupar las inserciones
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "pedidos_seq")
+    @SequenceGenerator(name = "pedidos_seq", sequenceName = "pedidos_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
@@ -28,6 +31,11 @@ public class Pedido {
     @Column(nullable = false)
     private LocalDateTime fechaActualizacion;
 
+    // Bloqueo optimista: toda escritura de un pedido incrementa la versión
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
     // Getters y setters
     public Long getId() {
         return id;
@@ -84,4 +92,12 @@ public class Pedido {
     public void setFechaActualizacion(LocalDateTime fechaActualizacion) {
         this.fechaActualizacion = fechaActualizacion;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
@@ -0,0 +1,125 @@
+package com.proyecto.pedidoservice.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Estado pendiente de propagar a tracking-service.
+ * Hay como máximo una fila por pedido: las actualizaciones sucesivas se coalescen.
+ */
+@Entity
+@Table(name = "tracking_outbox")
+public class TrackingOutbox {
+    @Id
+    private Long pedidoId;
+
+    @Column(nullable = false)
+    private String estado;
+
+    @Column(nullable = false)
+    private LocalDateTime fechaEvento;
+
+    // Se incrementa en cada actualización coalescida; permite confirmar solo lo que se envió
+    @Column(nullable = false)
+    private Long secuencia;
+
+    @Column(nullable = false)
+    private Integer intentos;
+
+    @Column(nullable = false)
+    private LocalDateTime proximoIntento;
+
+    @Column(length = 500)
+    private String ultimoError;
+
+    // Réplica que lo está entregando: ninguna otra lo toma hasta esta fecha
+    private LocalDateTime reclamadoHasta;
+
+    // Agotó los reintentos; un nuevo estado del pedido lo vuelve a dejar pendiente
+    @Column(nullable = false)
+    private boolean fallido;
+
+    @Column(nullable = false)
+    private LocalDateTime fechaCreacion;
+
+    // Getters y setters
+    public Long getPedidoId() {
+        return pedidoId;
+    }
+
+    public void setPedidoId(Long pedidoId) {
+        this.pedidoId = pedidoId;
+    }
+
+    public String getEstado() {
+        return estado;
+    }
+
+    public void setEstado(String estado) {
+        this.estado = estado;
+    }
+
+    public LocalDateTime getFechaEvento() {
+        return fechaEvento;
+    }
+
+    public void setFechaEvento(LocalDateTime fechaEvento) {
+        this.fechaEvento = fechaEvento;
+    }
+
+    public Long getSecuencia() {
+        return secuencia;
+    }
+
+    public void setSecuencia(Long secuencia) {
+        this.secuencia = secuencia;
+    }
+
+    public Integer getIntentos() {
+        return intentos;
+    }
+
+    public void setIntentos(Integer intentos) {
+        this.intentos = intentos;
+    }
+
+    public LocalDateTime getProximoIntento() {
+        return proximoIntento;
+    }
+
+    public void setProximoIntento(LocalDateTime proximoIntento) {
+        this.proximoIntento = proximoIntento;
+    }
+
+    public String getUltimoError() {
+        return ultimoError;
+    }
+
+    public void setUltimoError(String ultimoError) {
+        this.ultimoError = ultimoError;
+    }
+
+    public LocalDateTime getReclamadoHasta() {
+        return reclamadoHasta;
+    }
+
+    public void setReclamadoHasta(LocalDateTime reclamadoHasta) {
+        this.reclamadoHasta = reclamadoHasta;
+    }
+
+    public boolean isFallido() {
+        return fallido;
+    }
+
+    public void setFallido(boolean fallido) {
+        this.fallido = fallido;
+    }
+
+    public LocalDateTime getFechaCreacion() {
+        return fechaCreacion;
+    }
+
+    public void setFechaCreacion(LocalDateTime fechaCreacion) {
+        this.fechaCreacion = fechaCreacion;
+    }
+}
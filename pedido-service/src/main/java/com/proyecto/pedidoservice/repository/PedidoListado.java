@@ -0,0 +1,14 @@
+package com.proyecto.pedidoservice.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Proyección de solo lectura con las columnas de los listados de pedidos
+ */
+public interface PedidoListado extends PedidoResumen {
+    String getDireccion();
+
+    LocalDateTime getFechaCreacion();
+
+    Long getVersion();
+}
@@ -1,6 +1,7 @@
 package com.proyecto.pedidoservice.repository;
 
 import com.proyecto.pedidoservice.model.Pedido;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
@@ -8,7 +9,20 @@ import java.util.List;
 
 @Repository
 public interface PedidoRepository extends JpaRepository<Pedido, Long> {
-    List<Pedido> findByClienteId(Long clienteId);
+    /**
+     * Listados por keyset: pedidos con id menor al cursor, del más reciente al más antiguo
+     */
+    List<PedidoListado> findByIdLessThanOrderByIdDesc(Long cursor, Pageable pageable);
 
-    List<Pedido> findByEstado(String estado);
+    List<PedidoListado> findByClienteIdAndIdLessThanOrderByIdDesc(Long clienteId, Long cursor, Pageable pageable);
+
+    List<PedidoListado> findByEstadoAndIdLessThanOrderByIdDesc(String estado, Long cursor, Pageable pageable);
+
+    List<PedidoListado> findByClienteIdAndEstadoAndIdLessThanOrderByIdDesc(Long clienteId, String estado, Long cursor,
+                                                                          Pageable pageable);
+
+    /**
+     * Página por keyset: pedidos con id mayor al último procesado, en orden ascendente
+     */
+    List<PedidoResumen> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
 }
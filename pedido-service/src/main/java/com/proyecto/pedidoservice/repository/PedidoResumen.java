@@ -0,0 +1,18 @@
+package com.proyecto.pedidoservice.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Proyección ligera de un pedido para recorridos masivos y listados
+ */
+public interface PedidoResumen {
+    Long getId();
+
+    String getProducto();
+
+    Long getClienteId();
+
+    String getEstado();
+
+    LocalDateTime getFechaActualizacion();
+}
@@ -0,0 +1,55 @@
+package com.proyecto.pedidoservice.repository;
+
+import com.proyecto.pedidoservice.model.TrackingOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface TrackingOutboxRepository extends JpaRepository<TrackingOutbox, Long> {
+
+    /**
+     * Entradas vencidas y no reclamadas por otra réplica, las más atrasadas primero.
+     * Bloquea las filas devueltas y omite las bloqueadas por otra transacción:
+     * debe ejecutarse en la transacción que las reclama.
+     */
+    @Query(nativeQuery = true, value =
+        "SELECT * FROM tracking_outbox " +
+        "WHERE fallido = FALSE AND proximo_intento <= :ahora " +
+        "AND (reclamado_hasta IS NULL OR reclamado_hasta <= :ahora) " +
+        "ORDER BY proximo_intento LIMIT :limite FOR UPDATE SKIP LOCKED")
+    List<TrackingOutbox> bloquearPendientes(@Param("ahora") LocalDateTime ahora, @Param("limite") int limite);
+
+    @Modifying
+    @Query("UPDATE TrackingOutbox t SET t.reclamadoHasta = :hasta WHERE t.pedidoId IN :pedidoIds")
+    void reclamar(@Param("pedidoIds") List<Long> pedidoIds, @Param("hasta") LocalDateTime hasta);
+
+    long countByFallido(boolean fallido);
+
+    long countByFallidoFalseAndIntentosGreaterThan(int intentos);
+
+    /**
+     * Inserta o coalesce el estado de un pedido en el outbox. Solo reemplaza el estado
+     * pendiente si el evento es igual o más reciente, y lo deja listo para envío inmediato.
+     * El orden de las asignaciones importa: MySQL evalúa cada una con los valores ya actualizados.
+     */
+    @Modifying
+    @Query(nativeQuery = true, value =
+        "INSERT INTO tracking_outbox (pedido_id, estado, fecha_evento, secuencia, intentos, proximo_intento, fecha_creacion) " +
+        "VALUES (:pedidoId, :estado, :fechaEvento, 1, 0, :ahora, :ahora) " +
+        "ON DUPLICATE KEY UPDATE " +
+        "estado = IF(VALUES(fecha_evento) >= fecha_evento, VALUES(estado), estado), " +
+        "fecha_evento = GREATEST(fecha_evento, VALUES(fecha_evento)), " +
+        "secuencia = secuencia + 1, " +
+        "intentos = 0, " +
+        "proximo_intento = VALUES(proximo_intento), " +
+        "ultimo_error = NULL, " +
+        "fallido = FALSE")
+    void registrar(@Param("pedidoId") Long pedidoId, @Param("estado") String estado,
+                   @Param("fechaEvento") LocalDateTime fechaEvento, @Param("ahora") LocalDateTime ahora);
+}
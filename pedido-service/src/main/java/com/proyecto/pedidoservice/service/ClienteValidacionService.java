@@ -0,0 +1,156 @@
+package com.proyecto.pedidoservice.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.proyecto.common.http.ReactiveServiceTokenProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Validación de clientes contra cliente-service con caché local de clientes válidos.
+ *
+ * Solo se cachean los clientes confirmados como existentes y activos, con un número
+ * máximo de entradas y un TTL. cliente-service notifica las bajas y desactivaciones
+ * para invalidar la entrada de inmediato; el TTL acota la obsolescencia si alguna
+ * notificación se pierde. Los fallos se consultan con {@code HEAD /api/clientes/{id}}
+ * o, para varios ids, con una sola llamada a {@code POST /api/clientes/existen}.
+ * Las consultas son no bloqueantes: ningún hilo queda retenido esperando la respuesta.
+ */
+@Service
+public class ClienteValidacionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClienteValidacionService.class);
+
+    private final ReactiveServiceTokenProvider tokenProvider;
+    private final WebClient webClient;
+    private final AsyncCache<Long, Boolean> clientesValidos;
+
+    @Value("${cliente.service.url:http://cliente-service:8082}")
+    private String clienteServiceUrl;
+
+    public ClienteValidacionService(ReactiveServiceTokenProvider tokenProvider, WebClient webClient,
+                                    @Value("${pedido.clientes.cache.max-entradas:10000}") long maxEntradas,
+                                    @Value("${pedido.clientes.cache.ttl-s:300}") long ttlSegundos) {
+        this.tokenProvider = tokenProvider;
+        this.webClient = webClient;
+        this.clientesValidos = Caffeine.newBuilder()
+            .maximumSize(maxEntradas)
+            .expireAfterWrite(Duration.ofSeconds(ttlSegundos))
+            .buildAsync();
+    }
+
+    /**
+     * Indica si el cliente existe y está activo. Ante errores de comunicación
+     * falla de manera segura completando con false.
+     */
+    public CompletableFuture<Boolean> validarCliente(Long clienteId) {
+        // Las consultas concurrentes del mismo id comparten una sola llamada remota;
+        // una respuesta null (cliente no válido o error) no queda en caché
+        return clientesValidos.get(clienteId, (id, executor) -> consultarCliente(id).toFuture())
+            .thenApply(Objects::nonNull);
+    }
+
+    /**
+     * Devuelve los ids que no corresponden a clientes válidos, consultando en un
+     * solo lote los que no están en caché. Los errores de comunicación completan
+     * el resultado de forma excepcional.
+     */
+    public CompletableFuture<Set<Long>> clientesNoValidos(Collection<Long> clienteIds) {
+        Set<Long> desconocidos = new LinkedHashSet<>();
+        for (Long id : clienteIds) {
+            if (!validoEnCache(id)) {
+                desconocidos.add(id);
+            }
+        }
+        if (desconocidos.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptySet());
+        }
+
+        return tokenProvider.obtenerTokenReactivo()
+            .flatMap(token -> webClient.post()
+                .uri(clienteServiceUrl + "/api/clientes/existen")
+                .headers(headers -> headers.setBearerAuth(token))
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(desconocidos)
+                .retrieve()
+                .bodyToMono(ExistenciaClientes.class))
+            .map(respuesta -> {
+                Set<Long> noValidos = new LinkedHashSet<>(desconocidos);
+                if (respuesta.getValidos() != null) {
+                    for (Long id : respuesta.getValidos()) {
+                        clientesValidos.put(id, CompletableFuture.completedFuture(Boolean.TRUE));
+                        noValidos.remove(id);
+                    }
+                }
+                return noValidos;
+            })
+            .defaultIfEmpty(desconocidos)
+            .toFuture();
+    }
+
+    /**
+     * Elimina un cliente de la caché (baja o desactivación notificada por cliente-service)
+     */
+    public void invalidar(Long clienteId) {
+        clientesValidos.synchronous().invalidate(clienteId);
+        logger.debug("🧹 Cliente ID {} invalidado en caché", clienteId);
+    }
+
+    /**
+     * Solo cuenta como válida una entrada ya resuelta a true; las consultas en curso
+     * o resueltas sin resultado aún pueden estar presentes en la caché.
+     */
+    private boolean validoEnCache(Long clienteId) {
+        CompletableFuture<Boolean> entrada = clientesValidos.getIfPresent(clienteId);
+        return entrada != null && entrada.isDone() && !entrada.isCompletedExceptionally() &&
+            Boolean.TRUE.equals(entrada.join());
+    }
+
+    /**
+     * Consulta un cliente con HEAD. Completa vacío si no existe, está inactivo o
+     * falla la comunicación, de modo que no se cachea.
+     */
+    private Mono<Boolean> consultarCliente(Long clienteId) {
+        return tokenProvider.obtenerTokenReactivo()
+            .flatMap(token -> webClient.head()
+                .uri(clienteServiceUrl + "/api/clientes/{id}", clienteId)
+                .headers(headers -> headers.setBearerAuth(token))
+                .retrieve()
+                .toBodilessEntity())
+            .map(respuesta -> {
+                logger.debug("✅ Cliente ID {} validado en cliente-service", clienteId);
+                return Boolean.TRUE;
+            })
+            .onErrorResume(WebClientResponseException.NotFound.class, e -> {
+                logger.debug("❌ Cliente ID {} no encontrado o inactivo", clienteId);
+                return Mono.empty();
+            })
+            .onErrorResume(e -> {
+                logger.error("❌ Error al validar cliente ID {} - {}", clienteId, e.getMessage());
+                return Mono.empty();
+            });
+    }
+
+    /**
+     * Respuesta de POST /api/clientes/existen
+     */
+    public static class ExistenciaClientes {
+        private List<Long> validos;
+        private List<Long> invalidos;
+
+        public List<Long> getValidos() { return validos; }
+        public void setValidos(List<Long> validos) { this.validos = validos; }
+        public List<Long> getInvalidos() { return invalidos; }
+        public void setInvalidos(List<Long> invalidos) { this.invalidos = invalidos; }
+    }
+}
@@ -1,345 +1,467 @@
 package com.proyecto.pedidoservice.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.proyecto.pedidoservice.config.EjecutoresConfig;
+import com.proyecto.pedidoservice.dto.CambioEstadoPedido;
+import com.proyecto.pedidoservice.dto.PaginaPedidos;
+import com.proyecto.pedidoservice.dto.SincronizacionEstadoRequest;
 import com.proyecto.pedidoservice.model.Pedido;
+import com.proyecto.pedidoservice.repository.PedidoListado;
 import com.proyecto.pedidoservice.repository.PedidoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.jwt.Jwt;
-import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.web.context.request.RequestContextHolder;
-import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.client.RestClientException;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Statement;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.*;
 
 @Service
 public class PedidoService {
+    private static final Logger logger = LoggerFactory.getLogger(PedidoService.class);
+
+    /**
+     * Máquina de estados: para cada estado, los estados desde los que se puede llegar a él.
+     * PENDIENTE → PROCESANDO → ENVIADO → ENTREGADO; se cancela desde cualquier estado no final.
+     */
+    private static final Map<String, Set<String>> TRANSICIONES = Map.of(
+        "PENDIENTE", Set.of(),
+        "PROCESANDO", Set.of("PENDIENTE"),
+        "ENVIADO", Set.of("PROCESANDO"),
+        "ENTREGADO", Set.of("ENVIADO"),
+        "CANCELADO", Set.of("PENDIENTE", "PROCESANDO", "ENVIADO")
+    );
+
     private final PedidoRepository pedidoRepository;
-    private final TrackingServiceClient trackingServiceClient;
+    private final TrackingQueueService trackingQueueService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ReconciliacionService reconciliacionService;
+    private final ClienteValidacionService clienteValidacionService;
     private final RestTemplate restTemplate;
-    
-    @Value("${cliente.service.url:http://cliente-service:8082}")
-    private String clienteServiceUrl;
+    private final ObjectMapper objectMapper;
+    private final Executor persistenciaExecutor;
     
     @Value("${tracking.service.base.url:http://tracking-service:8084}")
     private String trackingServiceBaseUrl;
+    
+    @Value("${pedido.reconciliacion.max-discrepancias-respuesta:1000}")
+    private int maxDiscrepanciasRespuesta;
+
+    @Value("${pedido.bulk.max-pedidos:5000}")
+    private int maxPedidosLote;
+
+    @Value("${pedido.listados.limite-por-defecto:50}")
+    private int limitePorDefecto;
+
+    @Value("${pedido.listados.limite-maximo:200}")
+    private int limiteMaximo;
+
+    @Value("${pedido.listados.lote-exportacion:500}")
+    private int loteExportacion;
 
     @Autowired
-    public PedidoService(PedidoRepository pedidoRepository, TrackingServiceClient trackingServiceClient) {
+    public PedidoService(PedidoRepository pedidoRepository, TrackingQueueService trackingQueueService,
+                         JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                         ReconciliacionService reconciliacionService,
+                         ClienteValidacionService clienteValidacionService, RestTemplate restTemplate,
+                         ObjectMapper objectMapper,
+                         @Qualifier(EjecutoresConfig.PERSISTENCIA_PEDIDOS) Executor persistenciaExecutor) {
         this.pedidoRepository = pedidoRepository;
-        this.trackingServiceClient = trackingServiceClient;
-        this.restTemplate = new RestTemplate();
+        this.trackingQueueService = trackingQueueService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.reconciliacionService = reconciliacionService;
+        this.clienteValidacionService = clienteValidacionService;
+        this.restTemplate = restTemplate;
+        this.objectMapper = objectMapper;
+        // Hilos acotados donde se persiste el pedido tras la validación no bloqueante del cliente
+        this.persistenciaExecutor = persistenciaExecutor;
     }
 
-    public Pedido crearPedido(Pedido pedido) {
-        // Validar que el cliente existe
-        if (!validarClienteExiste(pedido.getClienteId())) {
+    /**
+     * Crea un pedido sin retener el hilo de la petición mientras se valida el cliente.
+     * La persistencia continúa en un pool propio, nunca en los hilos de E/S del cliente HTTP;
+     * si el pool está saturado el pedido falla con RejectedExecutionException.
+     */
+    public CompletableFuture<Pedido> crearPedido(Pedido pedido) {
+        CompletableFuture<Boolean> validacion = clienteValidacionService.validarCliente(pedido.getClienteId());
+        // Con el cliente en caché la validación ya está resuelta y se persiste sin cambiar de hilo
+        if (validacion.isDone()) {
+            return validacion.thenApply(valido -> guardarPedidoNuevo(pedido, valido));
+        }
+        // supplyAsync dentro de thenCompose: si el pool rechaza la tarea el pedido falla en vez de quedar pendiente
+        return validacion.thenCompose(valido ->
+            CompletableFuture.supplyAsync(() -> guardarPedidoNuevo(pedido, valido), persistenciaExecutor));
+    }
+
+    /**
+     * Crea pedidos en lote: valida los clientes distintos con una sola consulta a
+     * cliente-service, inserta los pedidos con batching JDBC y registra su estado inicial
+     * en el outbox con un único batch. Los pedidos incompletos o de clientes no válidos se
+     * rechazan individualmente (con su índice en la petición) sin afectar al resto.
+     */
+    public CompletableFuture<Map<String, Object>> crearPedidosLote(List<Pedido> pedidos) {
+        if (pedidos.size() > maxPedidosLote) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException(
+                "Máximo " + maxPedidosLote + " pedidos por lote"));
+        }
+
+        List<Map<String, Object>> rechazados = new ArrayList<>();
+        Set<Long> clienteIds = new HashSet<>();
+        for (int i = 0; i < pedidos.size(); i++) {
+            Pedido pedido = pedidos.get(i);
+            if (pedido == null || pedido.getProducto() == null || pedido.getClienteId() == null ||
+                pedido.getDireccion() == null) {
+                rechazados.add(crearRechazo(i, pedido, "producto, clienteId y direccion son requeridos"));
+            } else {
+                clienteIds.add(pedido.getClienteId());
+            }
+        }
+
+        return clienteValidacionService.clientesNoValidos(clienteIds).thenCompose(noValidos ->
+            CompletableFuture.supplyAsync(() -> guardarPedidosLote(pedidos, noValidos, rechazados), persistenciaExecutor));
+    }
+
+    private Map<String, Object> guardarPedidosLote(List<Pedido> pedidos, Set<Long> clientesNoValidos,
+                                                   List<Map<String, Object>> rechazados) {
+        Set<Integer> indicesRechazados = new HashSet<>();
+        for (Map<String, Object> rechazo : rechazados) {
+            indicesRechazados.add((Integer) rechazo.get("indice"));
+        }
+
+        LocalDateTime ahora = LocalDateTime.now();
+        List<Pedido> nuevos = new ArrayList<>(pedidos.size());
+        for (int i = 0; i < pedidos.size(); i++) {
+            if (indicesRechazados.contains(i)) {
+                continue;
+            }
+            Pedido pedido = pedidos.get(i);
+            if (clientesNoValidos.contains(pedido.getClienteId())) {
+                rechazados.add(crearRechazo(i, pedido, "Cliente con ID " + pedido.getClienteId() + " no existe"));
+                continue;
+            }
+            pedido.setId(null);
+            pedido.setVersion(null);
+            pedido.setEstado("PENDIENTE");
+            pedido.setFechaCreacion(ahora);
+            pedido.setFechaActualizacion(ahora);
+            nuevos.add(pedido);
+        }
+
+        if (!nuevos.isEmpty()) {
+            // Pedidos y outbox se confirman juntos, igual que en la creación individual
+            transactionTemplate.executeWithoutResult(status -> {
+                pedidoRepository.saveAllAndFlush(nuevos);
+                trackingQueueService.registrarNuevos(nuevos);
+            });
+        }
+
+        rechazados.sort(Comparator.comparing(rechazo -> (Integer) rechazo.get("indice")));
+        Map<String, Object> resultado = new HashMap<>();
+        resultado.put("recibidos", pedidos.size());
+        resultado.put("creados", nuevos.size());
+        resultado.put("rechazados", rechazados);
+        return resultado;
+    }
+
+    private Map<String, Object> crearRechazo(int indice, Pedido pedido, String motivo) {
+        Map<String, Object> rechazo = new HashMap<>();
+        rechazo.put("indice", indice);
+        rechazo.put("clienteId", pedido != null ? pedido.getClienteId() : null);
+        rechazo.put("motivo", motivo);
+        return rechazo;
+    }
+
+    private Pedido guardarPedidoNuevo(Pedido pedido, boolean clienteValido) {
+        if (!clienteValido) {
             throw new IllegalArgumentException("Cliente con ID " + pedido.getClienteId() + " no existe");
         }
         
         pedido.setFechaCreacion(LocalDateTime.now());
         pedido.setFechaActualizacion(LocalDateTime.now());
         pedido.setEstado("PENDIENTE");
-        Pedido saved = pedidoRepository.save(pedido);
-        // Consistencia eventual: notificar a tracking-service
-        notificarTrackingService(saved);
-        return saved;
+        // El pedido y su entrada en el outbox se confirman juntos; la validación
+        // remota queda fuera de la transacción para no retener la conexión
+        return transactionTemplate.execute(status -> {
+            Pedido saved = pedidoRepository.save(pedido);
+            // Consistencia eventual: notificar a tracking-service
+            notificarTrackingService(saved);
+            return saved;
+        });
+    }
+
+    /**
+     * Página de pedidos por keyset sobre el id (más recientes primero), con filtros opcionales.
+     * El tamaño de página se limita al máximo configurado.
+     */
+    public PaginaPedidos listarPedidos(Long clienteId, String estado, Long cursor, Integer limite) {
+        int tamano = limite == null ? limitePorDefecto : Math.max(1, Math.min(limite, limiteMaximo));
+        // Se pide un elemento extra para saber si existe una página siguiente
+        List<PedidoListado> items = buscarPagina(clienteId, estado, cursor, tamano + 1);
+        if (items.size() <= tamano) {
+            return new PaginaPedidos(items, null, tamano);
+        }
+        items = items.subList(0, tamano);
+        return new PaginaPedidos(items, items.get(tamano - 1).getId(), tamano);
     }
 
-    public List<Pedido> obtenerPedidosPorCliente(Long clienteId) {
-        return pedidoRepository.findByClienteId(clienteId);
+    /**
+     * Exporta como NDJSON todos los pedidos que cumplen los filtros, recorriéndolos por lotes
+     */
+    public void exportarPedidosNdjson(Long clienteId, String estado, OutputStream salida) throws IOException {
+        Long cursor = null;
+        while (true) {
+            List<PedidoListado> lote = buscarPagina(clienteId, estado, cursor, loteExportacion);
+            for (PedidoListado pedido : lote) {
+                salida.write(objectMapper.writeValueAsBytes(pedido));
+                salida.write('\n');
+            }
+            if (lote.size() < loteExportacion) {
+                break;
+            }
+            cursor = lote.get(lote.size() - 1).getId();
+        }
+        salida.flush();
     }
 
-    public List<Pedido> obtenerPedidosPorEstado(String estado) {
-        return pedidoRepository.findByEstado(estado);
+    private List<PedidoListado> buscarPagina(Long clienteId, String estado, Long cursor, int tamano) {
+        long desde = cursor != null ? cursor : Long.MAX_VALUE;
+        PageRequest pagina = PageRequest.of(0, tamano);
+        if (clienteId != null && estado != null) {
+            return pedidoRepository.findByClienteIdAndEstadoAndIdLessThanOrderByIdDesc(clienteId, estado, desde, pagina);
+        }
+        if (clienteId != null) {
+            return pedidoRepository.findByClienteIdAndIdLessThanOrderByIdDesc(clienteId, desde, pagina);
+        }
+        if (estado != null) {
+            return pedidoRepository.findByEstadoAndIdLessThanOrderByIdDesc(estado, desde, pagina);
+        }
+        return pedidoRepository.findByIdLessThanOrderByIdDesc(desde, pagina);
     }
 
     public Optional<Pedido> obtenerPedidoPorId(Long id) {
         return pedidoRepository.findById(id);
     }
 
-    public Pedido actualizarEstadoPedido(Long id, String nuevoEstado) {
-        Optional<Pedido> pedidoOpt = pedidoRepository.findById(id);
-        if (pedidoOpt.isPresent()) {
-            Pedido pedido = pedidoOpt.get();
-            pedido.setEstado(nuevoEstado);
-            pedido.setFechaActualizacion(LocalDateTime.now());
-            Pedido actualizado = pedidoRepository.save(pedido);
-            // Consistencia eventual: notificar a tracking-service
-            notificarTrackingService(actualizado);
-            return actualizado;
+    /**
+     * Cambia el estado de un pedido con una única sentencia UPDATE condicionada a que la
+     * transición sea válida desde el estado actual y, si se indica, a la versión esperada.
+     * Solo cuando no se actualiza ninguna fila se lee el pedido para determinar el motivo:
+     * inexistente (RuntimeException), transición inválida o versión desactualizada
+     * (IllegalStateException). Pedir el estado actual no modifica el pedido. Sin versión
+     * esperada, la versión resultante se lee tras el UPDATE dentro de la misma transacción
+     * (la fila queda bloqueada hasta el commit).
+     */
+    @Transactional
+    public CambioEstadoPedido actualizarEstadoPedido(Long id, String nuevoEstado, Long versionEsperada) {
+        Set<String> origenes = TRANSICIONES.get(nuevoEstado);
+        if (origenes == null) {
+            throw new IllegalArgumentException("Estado no válido: " + nuevoEstado);
         }
-        throw new RuntimeException("Pedido no encontrado");
-    }
 
-    public List<Pedido> obtenerTodosLosPedidos() {
-        return pedidoRepository.findAll();
-    }
+        LocalDateTime ahora = LocalDateTime.now();
+        List<Object> parametros = new ArrayList<>(List.of(nuevoEstado, Timestamp.valueOf(ahora), id));
+        parametros.addAll(origenes);
+        String sql = "UPDATE pedidos SET estado = ?, fecha_actualizacion = ?, version = version + 1 " +
+                     "WHERE id = ? AND estado IN (" + String.join(", ", Collections.nCopies(origenes.size(), "?")) + ")";
+        if (versionEsperada != null) {
+            sql += " AND version = ?";
+            parametros.add(versionEsperada);
+        }
 
-    private void notificarTrackingService(Pedido pedido) {
-        // Obtener JWT del contexto de seguridad
-        String jwtToken = null;
-        Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-        if (principal instanceof Jwt) {
-            jwtToken = ((Jwt) principal).getTokenValue();
-        } else {
-            // Alternativamente, obtener del request si está en el header
-            ServletRequestAttributes attr = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
-            if (attr != null) {
-                HttpServletRequest request = attr.getRequest();
-                String authHeader = request.getHeader("Authorization");
-                if (authHeader != null && authHeader.startsWith("Bearer ")) {
-                    jwtToken = authHeader.substring(7);
-                }
+        // Sin estados de origen (PENDIENTE) la transición nunca es válida y no se consulta
+        int filas = origenes.isEmpty() ? 0 : jdbcTemplate.update(sql, parametros.toArray());
+        if (filas == 0) {
+            Pedido actual = pedidoRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Pedido no encontrado"));
+            if (versionEsperada != null && !versionEsperada.equals(actual.getVersion())) {
+                throw new IllegalStateException("El pedido fue modificado (versión actual " + actual.getVersion() + ")");
             }
-        }
-        
-        if (jwtToken != null) {
-            try {
-                // Intento de sincronización con reintentos automáticos
-                trackingServiceClient.actualizarTracking(pedido, jwtToken);
-            } catch (Exception e) {
-                // Los reintentos y cola local se manejan automáticamente
-                // por @Retryable y @Recover en TrackingServiceClient
-                System.err.println("Error en sincronización con tracking-service para pedido ID: " + pedido.getId());
+            if (nuevoEstado.equals(actual.getEstado())) {
+                return new CambioEstadoPedido(id, actual.getEstado(), actual.getFechaActualizacion(),
+                    actual.getVersion(), false);
             }
-        } else {
-            System.err.println("⚠️ No se pudo obtener JWT token para sincronizar pedido ID: " + pedido.getId());
+            throw new IllegalStateException("Transición no permitida: " + actual.getEstado() + " → " + nuevoEstado);
         }
+
+        Long version = versionEsperada != null
+            ? versionEsperada + 1
+            : jdbcTemplate.queryForObject("SELECT version FROM pedidos WHERE id = ?", Long.class, id);
+
+        // Consistencia eventual: notificar a tracking-service
+        trackingQueueService.registrar(id, nuevoEstado, ahora);
+        return new CambioEstadoPedido(id, nuevoEstado, ahora, version, true);
     }
-    
+
     /**
-     * Valida si un cliente existe consultando el cliente-service
+     * Indica si un pedido puede pasar de un estado a otro (false si alguno es nulo o desconocido)
      */
-    private boolean validarClienteExiste(Long clienteId) {
-        try {
-            // Obtener JWT del contexto de seguridad para la llamada
-            String jwtToken = null;
-            Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-            if (principal instanceof Jwt) {
-                jwtToken = ((Jwt) principal).getTokenValue();
-            }
-            
-            if (jwtToken == null) {
-                System.err.println("⚠️ No se pudo obtener JWT token para validar cliente ID: " + clienteId);
-                return false; // Fallar de manera segura
-            }
-            
-            // Crear headers con JWT
-            org.springframework.http.HttpHeaders headers = new org.springframework.http.HttpHeaders();
-            headers.setBearerAuth(jwtToken);
-            org.springframework.http.HttpEntity<String> entity = new org.springframework.http.HttpEntity<>(headers);
-            
-            // Llamar al cliente-service para verificar existencia
-            String url = clienteServiceUrl + "/api/clientes/" + clienteId;
-            org.springframework.http.ResponseEntity<String> response = 
-                restTemplate.exchange(url, org.springframework.http.HttpMethod.GET, entity, String.class);
-            
-            boolean existe = response.getStatusCode().is2xxSuccessful();
-            System.out.println(existe ? 
-                "✅ Cliente ID " + clienteId + " validado exitosamente" : 
-                "❌ Cliente ID " + clienteId + " no encontrado");
-            
-            return existe;
-            
-        } catch (RestClientException e) {
-            System.err.println("❌ Error al validar cliente ID " + clienteId + ": " + e.getMessage());
-            // En caso de error de conectividad, podrías decidir si fallar o continuar
-            // Para este caso, vamos a fallar de manera segura
+    public static boolean esTransicionValida(String estadoActual, String nuevoEstado) {
+        if (estadoActual == null || nuevoEstado == null) {
             return false;
         }
+        Set<String> origenes = TRANSICIONES.get(nuevoEstado);
+        return origenes != null && origenes.contains(estadoActual);
     }
-    
+
     /**
-     * Compara discrepancias entre MySQL y Redis
+     * Aplica por lotes los estados notificados por tracking-service.
+     * Carga todos los pedidos con un único findAllById y escribe los cambios con un
+     * batch JDBC; las actualizaciones con fecha anterior o igual a la registrada en
+     * MySQL se descartan por obsoletas, y las que no respetan la máquina de estados
+     * se cuentan como transiciones inválidas. No se vuelve a notificar a tracking-service
+     * porque el cambio proviene de allí.
      */
-    public Map<String, Object> compararTrackingDiscrepancias() {
-        Map<String, Object> resultado = new HashMap<>();
-        List<Map<String, Object>> discrepancias = new ArrayList<>();
+    @Transactional
+    public Map<String, Object> sincronizarLoteDesdeTracking(List<SincronizacionEstadoRequest> actualizaciones) {
+        int rechazados = 0;
+        int noEncontrados = 0;
+        int obsoletos = 0;
+        int sinCambios = 0;
+        int transicionesInvalidas = 0;
         
-        try {
-            // Obtener todos los pedidos de MySQL
-            List<Pedido> pedidosMySQL = pedidoRepository.findAll();
-            
-            // Obtener JWT token para las consultas
-            String jwtToken = null;
-            Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-            if (principal instanceof Jwt) {
-                jwtToken = ((Jwt) principal).getTokenValue();
+        // Coalescer por pedido conservando la actualización más reciente
+        Map<Long, SincronizacionEstadoRequest> ultimas = new LinkedHashMap<>();
+        for (SincronizacionEstadoRequest actualizacion : actualizaciones) {
+            if (actualizacion.getPedidoId() == null || actualizacion.getEstado() == null) {
+                rechazados++;
+                continue;
             }
-            
-            if (jwtToken == null) {
-                resultado.put("error", "No se pudo obtener JWT token para comparación");
-                return resultado;
+            ultimas.merge(actualizacion.getPedidoId(), actualizacion,
+                (actual, nueva) -> esPosterior(nueva.getFechaActualizacion(), actual.getFechaActualizacion()) ? nueva : actual);
+        }
+        
+        Map<Long, Pedido> pedidos = new HashMap<>();
+        for (Pedido pedido : pedidoRepository.findAllById(ultimas.keySet())) {
+            pedidos.put(pedido.getId(), pedido);
+        }
+        
+        List<Object[]> parametros = new ArrayList<>();
+        LocalDateTime ahora = LocalDateTime.now();
+        for (SincronizacionEstadoRequest actualizacion : ultimas.values()) {
+            Pedido pedido = pedidos.get(actualizacion.getPedidoId());
+            if (pedido == null) {
+                noEncontrados++;
+                continue;
             }
             
-            org.springframework.http.HttpHeaders headers = new org.springframework.http.HttpHeaders();
-            headers.setBearerAuth(jwtToken);
-            org.springframework.http.HttpEntity<String> entity = new org.springframework.http.HttpEntity<>(headers);
-            
-            int totalPedidos = pedidosMySQL.size();
-            int discrepanciasEncontradas = 0;
-            int errorConsultas = 0;
+            LocalDateTime fecha = actualizacion.getFechaActualizacion() != null ? actualizacion.getFechaActualizacion() : ahora;
+            if (!fecha.isAfter(pedido.getFechaActualizacion())) {
+                obsoletos++;
+                continue;
+            }
+            if (actualizacion.getEstado().equals(pedido.getEstado())) {
+                sinCambios++;
+                continue;
+            }
+            if (!esTransicionValida(pedido.getEstado(), actualizacion.getEstado())) {
+                transicionesInvalidas++;
+                continue;
+            }
             
-            for (Pedido pedido : pedidosMySQL) {
-                try {
-                    // Consultar estado en Redis
-                    String trackingUrl = trackingServiceBaseUrl + "/api/tracking/" + pedido.getId();
-                    org.springframework.http.ResponseEntity<String> trackingResponse = 
-                        restTemplate.exchange(trackingUrl, org.springframework.http.HttpMethod.GET, entity, String.class);
-                    
-                    if (trackingResponse.getStatusCode().is2xxSuccessful() && trackingResponse.getBody() != null) {
-                        // Parse manual del JSON response
-                        String responseBody = trackingResponse.getBody();
-                        if (responseBody.contains("\"estado\"")) {
-                            // Extract estado from JSON response
-                            String estadoRedis = extractEstadoFromJson(responseBody);
-                            String estadoMySQL = pedido.getEstado();
-                            
-                            if (!Objects.equals(estadoMySQL, estadoRedis)) {
-                                discrepanciasEncontradas++;
-                                Map<String, Object> discrepancia = new HashMap<>();
-                                discrepancia.put("pedidoId", pedido.getId());
-                                discrepancia.put("estadoMySQL", estadoMySQL);
-                                discrepancia.put("estadoRedis", estadoRedis);
-                                discrepancia.put("producto", pedido.getProducto());
-                                discrepancia.put("fechaActualizacion", pedido.getFechaActualizacion());
-                                discrepancias.add(discrepancia);
-                            }
-                        }
-                    } else {
-                        // Pedido existe en MySQL pero no en Redis
-                        discrepanciasEncontradas++;
-                        Map<String, Object> discrepancia = new HashMap<>();
-                        discrepancia.put("pedidoId", pedido.getId());
-                        discrepancia.put("estadoMySQL", pedido.getEstado());
-                        discrepancia.put("estadoRedis", "NO_ENCONTRADO");
-                        discrepancia.put("producto", pedido.getProducto());
-                        discrepancia.put("fechaActualizacion", pedido.getFechaActualizacion());
-                        discrepancias.add(discrepancia);
-                    }
-                    
-                } catch (RestClientException e) {
-                    errorConsultas++;
-                    System.err.println("❌ Error al consultar tracking para pedido ID " + pedido.getId() + ": " + e.getMessage());
+            Timestamp timestamp = Timestamp.valueOf(fecha);
+            parametros.add(new Object[] {
+                actualizacion.getEstado(), timestamp, pedido.getId(), pedido.getEstado(), timestamp
+            });
+        }
+        
+        // Las condiciones sobre estado y fecha_actualizacion protegen frente a escrituras
+        // concurrentes: si el pedido cambió desde la lectura, la fila no se actualiza
+        int aplicados = 0;
+        if (!parametros.isEmpty()) {
+            int[] filas = jdbcTemplate.batchUpdate(
+                "UPDATE pedidos SET estado = ?, fecha_actualizacion = ?, version = version + 1 " +
+                "WHERE id = ? AND estado = ? AND fecha_actualizacion < ?",
+                parametros);
+            for (int fila : filas) {
+                if (fila > 0 || fila == Statement.SUCCESS_NO_INFO) {
+                    aplicados++;
                 }
             }
-            
-            // Preparar resultado
-            resultado.put("totalPedidos", totalPedidos);
-            resultado.put("discrepanciasEncontradas", discrepanciasEncontradas);
-            resultado.put("errorConsultas", errorConsultas);
-            resultado.put("consistenciaPercentage", totalPedidos > 0 ? 
-                ((totalPedidos - discrepanciasEncontradas) * 100.0 / totalPedidos) : 100.0);
-            resultado.put("discrepancias", discrepancias);
-            resultado.put("fechaComparacion", LocalDateTime.now());
-            resultado.put("estado", discrepanciasEncontradas == 0 ? "CONSISTENTE" : "INCONSISTENTE");
-            
-            System.out.println(discrepanciasEncontradas == 0 ? 
-                "✅ Comparación completada - Datos consistentes" : 
-                "⚠️ Comparación completada - " + discrepanciasEncontradas + " discrepancias encontradas");
-            
-        } catch (Exception e) {
-            resultado.put("error", "Error durante la comparación: " + e.getMessage());
-            System.err.println("❌ Error en comparación de discrepancias: " + e.getMessage());
+            obsoletos += parametros.size() - aplicados;
         }
         
+        Map<String, Object> resultado = new HashMap<>();
+        resultado.put("recibidos", actualizaciones.size());
+        resultado.put("aplicados", aplicados);
+        resultado.put("noEncontrados", noEncontrados);
+        resultado.put("obsoletos", obsoletos);
+        resultado.put("sinCambios", sinCambios);
+        resultado.put("transicionesInvalidas", transicionesInvalidas);
+        resultado.put("rechazados", rechazados);
         return resultado;
     }
+
+    /**
+     * Indica si una actualización debe reemplazar a otra del mismo pedido dentro del lote
+     * (sin fecha equivale a "ahora"; a igual fecha gana la última recibida)
+     */
+    private boolean esPosterior(LocalDateTime fecha, LocalDateTime referencia) {
+        if (fecha == null || referencia == null) {
+            return fecha == null;
+        }
+        return !fecha.isBefore(referencia);
+    }
+
+    /**
+     * Consistencia eventual: registra el nuevo estado en el outbox de tracking.
+     * Se ejecuta dentro de la transacción que guarda el pedido.
+     */
+    private void notificarTrackingService(Pedido pedido) {
+        trackingQueueService.registrar(pedido);
+    }
     
     /**
-     * Sincronizar todos los pedidos inconsistentes
+     * Compara discrepancias entre MySQL y Redis.
+     * La respuesta incluye el resumen completo y como máximo las primeras discrepancias configuradas.
      */
-    public Map<String, Object> sincronizarTodosLosPedidos() {
+    public Map<String, Object> compararTrackingDiscrepancias() {
         Map<String, Object> resultado = new HashMap<>();
-        List<String> sincronizados = new ArrayList<>();
-        List<String> errores = new ArrayList<>();
         
         try {
-            // Obtener discrepancias primero
-            Map<String, Object> discrepancias = compararTrackingDiscrepancias();
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> listaDiscrepancias = (List<Map<String, Object>>) discrepancias.get("discrepancias");
-            
-            if (listaDiscrepancias == null || listaDiscrepancias.isEmpty()) {
-                resultado.put("message", "No hay discrepancias para sincronizar");
-                resultado.put("sincronizados", 0);
-                resultado.put("errores", 0);
-                return resultado;
-            }
-            
-            // Obtener JWT token
-            String jwtToken = null;
-            Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-            if (principal instanceof Jwt) {
-                jwtToken = ((Jwt) principal).getTokenValue();
-            }
-            
-            if (jwtToken == null) {
-                resultado.put("error", "No se pudo obtener JWT token para sincronización");
-                return resultado;
-            }
-            
-            org.springframework.http.HttpHeaders headers = new org.springframework.http.HttpHeaders();
-            headers.setBearerAuth(jwtToken);
-            headers.setContentType(org.springframework.http.MediaType.APPLICATION_JSON);
-            
-            // Sincronizar cada discrepancia
-            for (Map<String, Object> discrepancia : listaDiscrepancias) {
-                try {
-                    Object pedidoIdObj = discrepancia.get("pedidoId");
-                    String estadoMySQL = (String) discrepancia.get("estadoMySQL");
-                    String estadoRedis = (String) discrepancia.get("estadoRedis");
-                    
-                    if (pedidoIdObj != null && estadoMySQL != null) {
-                        String pedidoId = pedidoIdObj.toString();
-                        
-                        if ("NO_ENCONTRADO".equals(estadoRedis)) {
-                            // Crear tracking desde pedido
-                            Map<String, String> requestBody = Map.of("estado", estadoMySQL);
-                            org.springframework.http.HttpEntity<Map<String, String>> entity = 
-                                new org.springframework.http.HttpEntity<>(requestBody, headers);
-                            
-                            String url = trackingServiceBaseUrl + "/api/tracking/" + pedidoId;
-                            restTemplate.exchange(url, org.springframework.http.HttpMethod.POST, entity, String.class);
-                            sincronizados.add("Pedido " + pedidoId + ": Tracking creado con estado " + estadoMySQL);
-                        } else {
-                            // Actualizar tracking con estado de MySQL
-                            Map<String, String> requestBody = Map.of("estado", estadoMySQL);
-                            org.springframework.http.HttpEntity<Map<String, String>> entity = 
-                                new org.springframework.http.HttpEntity<>(requestBody, headers);
-                            
-                            String url = trackingServiceBaseUrl + "/api/tracking/" + pedidoId;
-                            restTemplate.exchange(url, org.springframework.http.HttpMethod.POST, entity, String.class);
-                            sincronizados.add("Pedido " + pedidoId + ": Estado sincronizado de " + estadoRedis + " a " + estadoMySQL);
-                        }
-                    }
-                } catch (Exception e) {
-                    errores.add("Error en pedido " + discrepancia.get("pedidoId") + ": " + e.getMessage());
+            List<Map<String, Object>> discrepancias = new ArrayList<>();
+            resultado.putAll(reconciliacionService.reconciliar(discrepancia -> {
+                if (discrepancias.size() < maxDiscrepanciasRespuesta) {
+                    discrepancias.add(discrepancia);
                 }
-            }
+            }));
             
-            resultado.put("totalDiscrepancias", listaDiscrepancias.size());
-            resultado.put("sincronizados", sincronizados.size());
-            resultado.put("errores", errores.size());
-            resultado.put("detallesSincronizados", sincronizados);
-            resultado.put("detallesErrores", errores);
-            resultado.put("fechaSincronizacion", LocalDateTime.now());
-            
-            System.out.println("✅ Sincronización masiva completada: " + sincronizados.size() + " exitosos, " + errores.size() + " errores");
+            long discrepanciasEncontradas = (Long) resultado.get("discrepanciasEncontradas");
+            resultado.put("discrepancias", discrepancias);
+            resultado.put("discrepanciasTruncadas", discrepanciasEncontradas > discrepancias.size());
             
         } catch (Exception e) {
-            resultado.put("error", "Error durante la sincronización masiva: " + e.getMessage());
-            System.err.println("❌ Error en sincronización masiva: " + e.getMessage());
+            resultado.put("error", "Error durante la comparación: " + e.getMessage());
+            logger.error("❌ Error en comparación de discrepancias: {}", e.getMessage());
         }
         
         return resultado;
     }
     
+    /**
+     * Exporta todas las discrepancias como NDJSON sin acumularlas en memoria
+     */
+    public void exportarDiscrepanciasNdjson(OutputStream salida) throws IOException {
+        reconciliacionService.exportarNdjson(salida);
+    }
+    
     /**
      * Reparar tracking faltante para un pedido específico
      */
@@ -373,9 +495,9 @@ public class PedidoService {
             
             // Verificar si ya existe tracking
             try {
-                String checkUrl = trackingServiceBaseUrl + "/api/tracking/" + pedidoId;
+                String checkUrl = trackingServiceBaseUrl + "/api/tracking/{pedidoId}";
                 org.springframework.http.HttpEntity<String> checkEntity = new org.springframework.http.HttpEntity<>(headers);
-                restTemplate.exchange(checkUrl, org.springframework.http.HttpMethod.GET, checkEntity, String.class);
+                restTemplate.exchange(checkUrl, org.springframework.http.HttpMethod.GET, checkEntity, String.class, pedidoId);
                 
                 // Si llegamos aquí, el tracking existe
                 resultado.put("message", "El tracking ya existe para este pedido");
@@ -391,40 +513,23 @@ public class PedidoService {
             org.springframework.http.HttpEntity<Map<String, String>> entity = 
                 new org.springframework.http.HttpEntity<>(requestBody, headers);
             
-            String createUrl = trackingServiceBaseUrl + "/api/tracking/" + pedidoId;
-            restTemplate.exchange(createUrl, org.springframework.http.HttpMethod.POST, entity, String.class);
+            String createUrl = trackingServiceBaseUrl + "/api/tracking/{pedidoId}";
+            restTemplate.exchange(createUrl, org.springframework.http.HttpMethod.POST, entity, String.class, pedidoId);
             
             resultado.put("message", "Tracking reparado exitosamente");
             resultado.put("pedidoId", pedidoId);
             resultado.put("estado", pedido.getEstado());
             resultado.put("fechaReparacion", LocalDateTime.now());
             
-            System.out.println("✅ Tracking reparado para pedido ID: " + pedidoId + " con estado: " + pedido.getEstado());
+            logger.info("✅ Tracking reparado para pedido ID: {} con estado: {}", pedidoId, pedido.getEstado());
             
         } catch (RuntimeException e) {
             throw e; // Re-throw para manejar en el controller
         } catch (Exception e) {
             resultado.put("error", "Error durante la reparación: " + e.getMessage());
-            System.err.println("❌ Error en reparación de tracking para pedido ID " + pedidoId + ": " + e.getMessage());
+            logger.error("❌ Error en reparación de tracking para pedido ID {}: {}", pedidoId, e.getMessage());
         }
         
         return resultado;
     }
-    
-    /**
-     * Helper method to extract estado from JSON response
-     */
-    private String extractEstadoFromJson(String jsonResponse) {
-        try {
-            // Simple JSON parsing for estado field
-            int estadoStart = jsonResponse.indexOf("\"estado\":\"") + 10;
-            int estadoEnd = jsonResponse.indexOf("\"", estadoStart);
-            if (estadoStart > 9 && estadoEnd > estadoStart) {
-                return jsonResponse.substring(estadoStart, estadoEnd);
-            }
-        } catch (Exception e) {
-            System.err.println("⚠️ Error parsing JSON response: " + e.getMessage());
-        }
-        return "UNKNOWN";
-    }
 }
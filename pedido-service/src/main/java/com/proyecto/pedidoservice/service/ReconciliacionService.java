@@ -0,0 +1,196 @@
+package com.proyecto.pedidoservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.proyecto.common.http.ServiceTokenProvider;
+import com.proyecto.pedidoservice.repository.PedidoRepository;
+import com.proyecto.pedidoservice.repository.PedidoResumen;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Motor de reconciliación entre MySQL (fuente autoritativa) y el tracking en Redis.
+ *
+ * Recorre la tabla de pedidos por lotes con paginación keyset sobre el id, consulta
+ * el estado de tracking de cada lote con una sola llamada a tracking-service y
+ * entrega las discrepancias a medida que se detectan. La memoria usada corresponde
+ * a un lote, independientemente del tamaño de la tabla.
+ */
+@Service
+public class ReconciliacionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReconciliacionService.class);
+
+    public static final String ESTADO_NO_ENCONTRADO = "NO_ENCONTRADO";
+
+    private final PedidoRepository pedidoRepository;
+    private final ObjectMapper objectMapper;
+    private final ServiceTokenProvider tokenProvider;
+    private final RestTemplate restTemplate;
+
+    @Value("${tracking.service.base.url:http://tracking-service:8084}")
+    private String trackingServiceBaseUrl;
+
+    @Value("${pedido.reconciliacion.lote:500}")
+    private int tamanoLote;
+
+    public ReconciliacionService(PedidoRepository pedidoRepository, ObjectMapper objectMapper,
+                                 ServiceTokenProvider tokenProvider, RestTemplate restTemplate) {
+        this.pedidoRepository = pedidoRepository;
+        this.objectMapper = objectMapper;
+        this.tokenProvider = tokenProvider;
+        this.restTemplate = restTemplate;
+    }
+
+    /**
+     * Recorre todos los pedidos y entrega cada discrepancia al consumidor.
+     * Devuelve el resumen de la comparación.
+     */
+    public Map<String, Object> reconciliar(Consumer<Map<String, Object>> consumidor) {
+        return reconciliar(consumidor, revisados -> {});
+    }
+
+    /**
+     * Igual que {@link #reconciliar(Consumer)}, informando además la cantidad
+     * acumulada de pedidos revisados al terminar cada lote.
+     */
+    public Map<String, Object> reconciliar(Consumer<Map<String, Object>> consumidor, LongConsumer progreso) {
+        long totalPedidos = 0;
+        long discrepanciasEncontradas = 0;
+        long errorConsultas = 0;
+        long ultimoId = 0;
+
+        while (true) {
+            List<PedidoResumen> lote = pedidoRepository.findByIdGreaterThanOrderByIdAsc(
+                ultimoId, PageRequest.of(0, tamanoLote));
+            if (lote.isEmpty()) {
+                break;
+            }
+            ultimoId = lote.get(lote.size() - 1).getId();
+            totalPedidos += lote.size();
+
+            Map<String, Map<String, Object>> estadosTracking;
+            try {
+                estadosTracking = consultarTracking(lote);
+            } catch (RestClientException e) {
+                errorConsultas += lote.size();
+                logger.error("❌ Error al consultar tracking para lote de pedidos hasta ID {} - {}", ultimoId, e.getMessage());
+                progreso.accept(totalPedidos);
+                continue;
+            }
+
+            for (PedidoResumen pedido : lote) {
+                Map<String, Object> tracking = estadosTracking.get(String.valueOf(pedido.getId()));
+                String estadoRedis = tracking != null ? String.valueOf(tracking.get("estado")) : ESTADO_NO_ENCONTRADO;
+
+                if (!Objects.equals(pedido.getEstado(), estadoRedis)) {
+                    discrepanciasEncontradas++;
+                    consumidor.accept(crearDiscrepancia(pedido, estadoRedis));
+                }
+            }
+            progreso.accept(totalPedidos);
+
+            if (lote.size() < tamanoLote) {
+                break;
+            }
+        }
+
+        Map<String, Object> resumen = new HashMap<>();
+        resumen.put("totalPedidos", totalPedidos);
+        resumen.put("discrepanciasEncontradas", discrepanciasEncontradas);
+        resumen.put("errorConsultas", errorConsultas);
+        resumen.put("consistenciaPercentage", totalPedidos > 0 ?
+            ((totalPedidos - discrepanciasEncontradas) * 100.0 / totalPedidos) : 100.0);
+        resumen.put("fechaComparacion", LocalDateTime.now());
+        resumen.put("estado", discrepanciasEncontradas == 0 ? "CONSISTENTE" : "INCONSISTENTE");
+
+        logger.info(discrepanciasEncontradas == 0 ?
+            "✅ Reconciliación completada - {} pedidos consistentes" :
+            "⚠️ Reconciliación completada - {} pedidos, discrepancias encontradas: {}",
+            totalPedidos, discrepanciasEncontradas);
+
+        return resumen;
+    }
+
+    /**
+     * Escribe las discrepancias como NDJSON (una por línea) seguidas de una línea con el resumen
+     */
+    public void exportarNdjson(OutputStream salida) throws IOException {
+        try {
+            Map<String, Object> resumen = reconciliar(discrepancia -> escribirLinea(salida, discrepancia));
+            escribirLinea(salida, Map.of("resumen", resumen));
+            salida.flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Consulta el estado de tracking de un lote con una sola llamada a tracking-service
+     */
+    private Map<String, Map<String, Object>> consultarTracking(List<PedidoResumen> lote) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBearerAuth(tokenProvider.obtenerToken());
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        List<String> ids = new ArrayList<>(lote.size());
+        for (PedidoResumen pedido : lote) {
+            ids.add(String.valueOf(pedido.getId()));
+        }
+
+        // Solo se compara el estado: se omite la fecha para no decodificarla en tracking-service
+        String url = trackingServiceBaseUrl + "/api/tracking/batch?campos=estado";
+        ConsultaLoteTracking respuesta = restTemplate.exchange(
+            url, HttpMethod.POST, new HttpEntity<>(ids, headers), ConsultaLoteTracking.class).getBody();
+        return respuesta != null && respuesta.getEncontrados() != null ?
+            respuesta.getEncontrados() : Collections.emptyMap();
+    }
+
+    private Map<String, Object> crearDiscrepancia(PedidoResumen pedido, String estadoRedis) {
+        Map<String, Object> discrepancia = new HashMap<>();
+        discrepancia.put("pedidoId", pedido.getId());
+        discrepancia.put("estadoMySQL", pedido.getEstado());
+        discrepancia.put("estadoRedis", estadoRedis);
+        discrepancia.put("producto", pedido.getProducto());
+        discrepancia.put("fechaActualizacion", pedido.getFechaActualizacion());
+        return discrepancia;
+    }
+
+    private void escribirLinea(OutputStream salida, Object valor) {
+        try {
+            salida.write(objectMapper.writeValueAsBytes(valor));
+            salida.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Respuesta de POST /api/tracking/batch
+     */
+    public static class ConsultaLoteTracking {
+        private Map<String, Map<String, Object>> encontrados;
+        private List<String> noEncontrados;
+
+        public Map<String, Map<String, Object>> getEncontrados() { return encontrados; }
+        public void setEncontrados(Map<String, Map<String, Object>> encontrados) { this.encontrados = encontrados; }
+        public List<String> getNoEncontrados() { return noEncontrados; }
+        public void setNoEncontrados(List<String> noEncontrados) { this.noEncontrados = noEncontrados; }
+    }
+}
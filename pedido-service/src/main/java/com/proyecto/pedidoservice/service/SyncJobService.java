@@ -0,0 +1,306 @@
+package com.proyecto.pedidoservice.service;
+
+import com.proyecto.common.http.ServiceTokenProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.task.SimpleAsyncTaskExecutorBuilder;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import jakarta.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Trabajos asíncronos de sincronización masiva MySQL → Redis.
+ *
+ * Cada trabajo recorre los pedidos con el motor de reconciliación y repara cada
+ * discrepancia en un hilo propio (virtual con el perfil virtual-threads), limitando
+ * la concurrencia y las peticiones por segundo hacia tracking-service. El progreso
+ * se consulta por id y el trabajo puede cancelarse mientras está en curso; la
+ * cancelación se atiende al terminar cada lote revisado.
+ */
+@Service
+public class SyncJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SyncJobService.class);
+
+    private static final int MAX_DETALLES_ERROR = 100;
+
+    private final ReconciliacionService reconciliacionService;
+    private final ServiceTokenProvider tokenProvider;
+    private final RestTemplate restTemplate;
+    private final SimpleAsyncTaskExecutor trabajadores;
+    private final ExecutorService coordinador;
+    private final Map<String, SyncJob> jobs = new ConcurrentHashMap<>();
+
+    @Value("${tracking.service.base.url:http://tracking-service:8084}")
+    private String trackingServiceBaseUrl;
+
+    @Value("${pedido.sync-jobs.concurrencia:8}")
+    private int concurrencia;
+
+    @Value("${pedido.sync-jobs.max-peticiones-por-segundo:50}")
+    private double maxPeticionesPorSegundo;
+
+    @Value("${pedido.sync-jobs.historial:20}")
+    private int maxJobsHistorial;
+
+    public SyncJobService(ReconciliacionService reconciliacionService, ServiceTokenProvider tokenProvider,
+                          RestTemplate restTemplate, SimpleAsyncTaskExecutorBuilder executorBuilder) {
+        this.reconciliacionService = reconciliacionService;
+        this.tokenProvider = tokenProvider;
+        this.restTemplate = restTemplate;
+        // El builder de Spring Boot ya crea hilos virtuales si spring.threads.virtual.enabled
+        this.trabajadores = executorBuilder.threadNamePrefix("sync-job-").build();
+        this.coordinador = Executors.newSingleThreadExecutor(r -> new Thread(r, "sync-job-coordinador"));
+    }
+
+    /**
+     * Inicia un trabajo de sincronización. Solo puede haber uno en curso a la vez.
+     */
+    public synchronized SyncJob iniciar() {
+        for (SyncJob job : jobs.values()) {
+            if (!job.isTerminado()) {
+                throw new IllegalStateException("Ya existe un trabajo de sincronización en curso: " + job.getId());
+            }
+        }
+
+        SyncJob job = new SyncJob(UUID.randomUUID().toString());
+        jobs.put(job.getId(), job);
+        depurarHistorial();
+
+        coordinador.submit(() -> ejecutar(job));
+        logger.info("🚀 Trabajo de sincronización {} iniciado", job.getId());
+        return job;
+    }
+
+    public Optional<SyncJob> obtener(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    public List<SyncJob> listar() {
+        List<SyncJob> lista = new ArrayList<>(jobs.values());
+        lista.sort(Comparator.comparing(SyncJob::getFechaInicio).reversed());
+        return lista;
+    }
+
+    /**
+     * Solicita la cancelación de un trabajo en curso.
+     * Devuelve false si el trabajo ya había terminado.
+     */
+    public boolean cancelar(String id) {
+        SyncJob job = jobs.get(id);
+        if (job == null || job.isTerminado()) {
+            return false;
+        }
+        job.cancelado = true;
+        logger.info("🛑 Cancelación solicitada para trabajo de sincronización {}", id);
+        return true;
+    }
+
+    @PreDestroy
+    public void detener() {
+        jobs.values().forEach(job -> job.cancelado = true);
+        coordinador.shutdownNow();
+    }
+
+    private void ejecutar(SyncJob job) {
+        // Cada reparación retiene un permiso mientras dura: acota los hilos vivos y las
+        // peticiones simultáneas, y frena la reconciliación cuando todos están ocupados
+        Semaphore enVuelo = new Semaphore(concurrencia);
+        LimitadorTasa limitador = new LimitadorTasa(maxPeticionesPorSegundo);
+
+        try {
+            reconciliacionService.reconciliar(discrepancia -> {
+                if (job.cancelado) {
+                    throw new CancellationException();
+                }
+                job.discrepancias.incrementAndGet();
+                try {
+                    enVuelo.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException();
+                }
+                try {
+                    trabajadores.execute(() -> {
+                        try {
+                            if (!job.cancelado) {
+                                limitador.adquirir();
+                                reparar(discrepancia);
+                                job.sincronizados.incrementAndGet();
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } catch (Exception e) {
+                            job.registrarError("Error en pedido " + discrepancia.get("pedidoId") + ": " + e.getMessage());
+                        } finally {
+                            enVuelo.release();
+                        }
+                    });
+                } catch (TaskRejectedException e) {
+                    enVuelo.release();
+                    throw e;
+                }
+            }, revisados -> {
+                job.pedidosRevisados.set(revisados);
+                // Sin esto, un lote sin discrepancias nunca vería la cancelación
+                if (job.cancelado) {
+                    throw new CancellationException();
+                }
+            });
+
+            // Espera a que terminen las reparaciones en curso
+            enVuelo.acquire(concurrencia);
+            job.finalizar(job.cancelado ? EstadoJob.CANCELADO : EstadoJob.COMPLETADO, null);
+
+        } catch (CancellationException e) {
+            job.finalizar(EstadoJob.CANCELADO, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.cancelado = true;
+            job.finalizar(EstadoJob.CANCELADO, null);
+        } catch (Exception e) {
+            job.cancelado = true;
+            job.finalizar(EstadoJob.FALLIDO, e.getMessage());
+            logger.error("❌ Error en trabajo de sincronización {} - {}", job.getId(), e.getMessage());
+        }
+
+        logger.info("✅ Trabajo de sincronización {} finalizado ({}): {} sincronizados, {} errores",
+                    job.getId(), job.estado, job.sincronizados.get(), job.errores.get());
+    }
+
+    /**
+     * Escribe en tracking-service el estado autoritativo de MySQL
+     */
+    private void reparar(Map<String, Object> discrepancia) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBearerAuth(tokenProvider.obtenerToken());
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        String pedidoId = String.valueOf(discrepancia.get("pedidoId"));
+        String estadoMySQL = (String) discrepancia.get("estadoMySQL");
+
+        HttpEntity<Map<String, String>> entity = new HttpEntity<>(Map.of("estado", estadoMySQL), headers);
+        String url = trackingServiceBaseUrl + "/api/tracking/{pedidoId}";
+        restTemplate.exchange(url, HttpMethod.POST, entity, String.class, pedidoId);
+    }
+
+    private void depurarHistorial() {
+        List<SyncJob> terminados = new ArrayList<>();
+        for (SyncJob job : jobs.values()) {
+            if (job.isTerminado()) {
+                terminados.add(job);
+            }
+        }
+        terminados.sort(Comparator.comparing(SyncJob::getFechaInicio));
+        for (int i = 0; i < terminados.size() - maxJobsHistorial; i++) {
+            jobs.remove(terminados.get(i).getId());
+        }
+    }
+
+    public enum EstadoJob { EN_PROGRESO, COMPLETADO, CANCELADO, FALLIDO }
+
+    /**
+     * Estado y progreso de un trabajo de sincronización
+     */
+    public static class SyncJob {
+        private final String id;
+        private final LocalDateTime fechaInicio = LocalDateTime.now();
+        private volatile LocalDateTime fechaFin;
+        private volatile EstadoJob estado = EstadoJob.EN_PROGRESO;
+        private volatile boolean cancelado;
+        private volatile String error;
+        private final AtomicLong pedidosRevisados = new AtomicLong();
+        private final AtomicLong discrepancias = new AtomicLong();
+        private final AtomicLong sincronizados = new AtomicLong();
+        private final AtomicLong errores = new AtomicLong();
+        private final List<String> detallesErrores = Collections.synchronizedList(new ArrayList<>());
+
+        SyncJob(String id) {
+            this.id = id;
+        }
+
+        public String getId() { return id; }
+        public LocalDateTime getFechaInicio() { return fechaInicio; }
+        public boolean isTerminado() { return estado != EstadoJob.EN_PROGRESO; }
+
+        void registrarError(String detalle) {
+            errores.incrementAndGet();
+            if (detallesErrores.size() < MAX_DETALLES_ERROR) {
+                detallesErrores.add(detalle);
+            }
+        }
+
+        void finalizar(EstadoJob estadoFinal, String error) {
+            this.error = error;
+            this.fechaFin = LocalDateTime.now();
+            this.estado = estadoFinal;
+        }
+
+        public Map<String, Object> aMapa() {
+            Map<String, Object> mapa = new LinkedHashMap<>();
+            mapa.put("id", id);
+            mapa.put("estado", estado);
+            mapa.put("cancelacionSolicitada", cancelado);
+            mapa.put("fechaInicio", fechaInicio);
+            mapa.put("fechaFin", fechaFin);
+            mapa.put("pedidosRevisados", pedidosRevisados.get());
+            mapa.put("discrepancias", discrepancias.get());
+            mapa.put("sincronizados", sincronizados.get());
+            mapa.put("errores", errores.get());
+            synchronized (detallesErrores) {
+                mapa.put("detallesErrores", new ArrayList<>(detallesErrores));
+            }
+            if (error != null) {
+                mapa.put("error", error);
+            }
+            return mapa;
+        }
+    }
+
+    /**
+     * Limitador de tasa que espacia las peticiones uniformemente.
+     * Usa un ReentrantLock en lugar de synchronized para no fijar hilos virtuales a su portador.
+     */
+    static class LimitadorTasa {
+        private final long intervaloNanos;
+        private final ReentrantLock lock = new ReentrantLock();
+        private long proximoTurno = System.nanoTime();
+
+        LimitadorTasa(double peticionesPorSegundo) {
+            this.intervaloNanos = peticionesPorSegundo > 0 ? (long) (1_000_000_000L / peticionesPorSegundo) : 0;
+        }
+
+        void adquirir() throws InterruptedException {
+            if (intervaloNanos == 0) {
+                return;
+            }
+            long espera;
+            lock.lock();
+            try {
+                long ahora = System.nanoTime();
+                long turno = Math.max(proximoTurno, ahora);
+                proximoTurno = turno + intervaloNanos;
+                espera = turno - ahora;
+            } finally {
+                lock.unlock();
+            }
+            // Se duerme fuera del lock para que los demás hilos reserven su turno mientras tanto
+            if (espera > 0) {
+                TimeUnit.NANOSECONDS.sleep(espera);
+            }
+        }
+    }
+}
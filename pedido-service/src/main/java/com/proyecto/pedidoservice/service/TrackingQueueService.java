@@ -1,159 +1,318 @@
 package com.proyecto.pedidoservice.service;
 
 import com.proyecto.pedidoservice.model.Pedido;
+import com.proyecto.pedidoservice.model.TrackingOutbox;
+import com.proyecto.pedidoservice.repository.TrackingOutboxRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.reactive.function.client.WebClientException;
 
+import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Servicio de cola local para garantizar consistencia eventual
- * cuando tracking-service no está disponible
+ * Outbox persistente para garantizar consistencia eventual con tracking-service.
+ *
+ * Cada cambio de estado se registra en la tabla {@code tracking_outbox} dentro de la
+ * misma transacción que guarda el pedido, con una fila por pedido (las actualizaciones
+ * sucesivas se coalescen). El despachador envía los pendientes por lotes a
+ * tracking-service; el tamaño del lote se duplica tras cada entrega exitosa y se reduce
+ * a la mitad tras un fallo, y cada entrada fallida se reprograma con backoff exponencial.
+ * Las entradas solo se eliminan cuando tracking-service las acepta, por lo que sobreviven
+ * a reinicios y caídas prolongadas.
+ *
+ * Con varias réplicas, cada una reclama su lote en una transacción corta
+ * ({@code SELECT ... FOR UPDATE SKIP LOCKED} y {@code reclamado_hasta}), de modo que una
+ * entrada no se envía desde dos réplicas a la vez; si la réplica cae, el reclamo vence y
+ * otra la retoma. Tras {@code pedido.outbox.max-intentos} envíos fallidos la entrada queda
+ * marcada como fallida y deja de reintentarse hasta que el pedido cambie de estado.
  */
 @Service
 public class TrackingQueueService {
-    
+
     private static final Logger logger = LoggerFactory.getLogger(TrackingQueueService.class);
-    
-    // Cola thread-safe para almacenar pedidos pendientes de sincronización
-    private final ConcurrentLinkedQueue<TrackingQueueItem> colaLocal = new ConcurrentLinkedQueue<>();
-    
-    private final AtomicInteger intentosFallidos = new AtomicInteger(0);
-    private final AtomicInteger itemsProcesados = new AtomicInteger(0);
-    
-    private TrackingServiceClient trackingClient;
-
-    // Inyección circular evitada con setter
-    public void setTrackingClient(TrackingServiceClient trackingClient) {
+
+    private static final int MAX_LONGITUD_ERROR = 500;
+
+    private final TrackingOutboxRepository outboxRepository;
+    private final TrackingServiceClient trackingClient;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private final int loteMinimo;
+    private final int loteMaximo;
+
+    @Value("${pedido.outbox.max-lotes-por-ciclo:20}")
+    private int maxLotesPorCiclo;
+
+    @Value("${pedido.outbox.backoff-inicial-ms:1000}")
+    private long backoffInicialMs;
+
+    @Value("${pedido.outbox.backoff-maximo-ms:300000}")
+    private long backoffMaximoMs;
+
+    @Value("${pedido.outbox.max-intentos:15}")
+    private int maxIntentos;
+
+    // Debe superar el tiempo máximo de envío de un lote
+    @Value("${pedido.outbox.reclamo-ms:60000}")
+    private long reclamoMs;
+
+    private volatile int loteActual;
+    private final AtomicLong itemsProcesados = new AtomicLong(0);
+    private final AtomicLong itemsRechazados = new AtomicLong(0);
+    private final AtomicLong lotesFallidos = new AtomicLong(0);
+    private final AtomicLong itemsFallidos = new AtomicLong(0);
+
+    public TrackingQueueService(TrackingOutboxRepository outboxRepository, TrackingServiceClient trackingClient,
+                                JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                @Value("${pedido.outbox.lote-minimo:10}") int loteMinimo,
+                                @Value("${pedido.outbox.lote-maximo:500}") int loteMaximo) {
+        this.outboxRepository = outboxRepository;
         this.trackingClient = trackingClient;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.loteMinimo = loteMinimo;
+        this.loteMaximo = loteMaximo;
+        this.loteActual = loteMaximo;
     }
 
     /**
-     * Agregar pedido a la cola local
+     * Registra el estado actual del pedido en el outbox.
+     * Debe ejecutarse dentro de la transacción que guarda el pedido.
      */
-    public void agregarACola(Pedido pedido, String jwtToken) {
-        TrackingQueueItem item = new TrackingQueueItem(pedido, jwtToken, LocalDateTime.now());
-        colaLocal.offer(item);
-        
-        logger.info("📋 Pedido ID: {} agregado a cola local. Tamaño cola: {}", 
-                   pedido.getId(), colaLocal.size());
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void registrar(Pedido pedido) {
+        registrar(pedido.getId(), pedido.getEstado(), pedido.getFechaActualizacion());
     }
 
     /**
-     * Procesar cola local cada 30 segundos
+     * Igual que {@link #registrar(Pedido)} para cambios escritos sin cargar la entidad
      */
-    @Scheduled(fixedRate = 30000) // 30 segundos
-    @Async
-    public void procesarColaLocal() {
-        if (colaLocal.isEmpty()) {
-            return;
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void registrar(Long pedidoId, String estado, LocalDateTime fechaActualizacion) {
+        outboxRepository.registrar(pedidoId, estado, fechaActualizacion, LocalDateTime.now());
+        logger.debug("📋 Pedido ID: {} registrado en outbox con estado {}", pedidoId, estado);
+    }
+
+    /**
+     * Registra en un solo batch JDBC el estado inicial de pedidos recién creados.
+     * Al ser pedidos nuevos no existe fila previa que coalescer.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void registrarNuevos(List<Pedido> pedidos) {
+        Timestamp ahora = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> parametros = new ArrayList<>(pedidos.size());
+        for (Pedido pedido : pedidos) {
+            parametros.add(new Object[] {
+                pedido.getId(), pedido.getEstado(), Timestamp.valueOf(pedido.getFechaActualizacion()), ahora, ahora
+            });
         }
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO tracking_outbox (pedido_id, estado, fecha_evento, secuencia, intentos, proximo_intento, fecha_creacion) " +
+            "VALUES (?, ?, ?, 1, 0, ?, ?)", parametros);
+        logger.debug("📋 {} pedidos nuevos registrados en outbox", pedidos.size());
+    }
 
-        logger.info("🔄 Procesando cola local. Items pendientes: {}", colaLocal.size());
-        
-        int procesados = 0;
-        int fallidos = 0;
-        
-        // Procesar hasta 10 items por batch para evitar sobrecarga
-        for (int i = 0; i < 10 && !colaLocal.isEmpty(); i++) {
-            TrackingQueueItem item = colaLocal.poll();
-            
-            if (item == null) break;
-            
-            // Verificar si el item no es muy antiguo (máximo 1 hora)
-            if (item.getFechaCreacion().isBefore(LocalDateTime.now().minusHours(1))) {
-                logger.warn("⏰ Item muy antiguo descartado. Pedido ID: {}", item.getPedido().getId());
-                continue;
-            }
-            
-            try {
-                boolean exito = trackingClient.intentarActualizacionDesdeCola(
-                    item.getPedido(), item.getJwtToken());
-                
-                if (exito) {
-                    procesados++;
-                    itemsProcesados.incrementAndGet();
-                    logger.info("✅ Pedido ID: {} sincronizado desde cola local", item.getPedido().getId());
-                } else {
-                    // Volver a agregar a la cola para siguiente intento
-                    colaLocal.offer(item);
-                    fallidos++;
-                    intentosFallidos.incrementAndGet();
+    /**
+     * Drena el outbox por lotes hacia tracking-service
+     */
+    @Scheduled(fixedDelayString = "${pedido.outbox.intervalo-ms:1000}")
+    public void procesarColaLocal() {
+        try {
+            for (int i = 0; i < maxLotesPorCiclo; i++) {
+                int lote = loteActual;
+                LocalDateTime reclamadoHasta = LocalDateTime.now().plus(Duration.ofMillis(reclamoMs));
+                List<TrackingOutbox> pendientes = reclamar(lote, reclamadoHasta);
+                if (pendientes.isEmpty()) {
+                    return;
+                }
+                boolean entregado;
+                try {
+                    entregado = entregar(pendientes);
+                } finally {
+                    liberar(pendientes, reclamadoHasta);
+                }
+                if (!entregado || pendientes.size() < lote) {
+                    return;
                 }
-            } catch (Exception e) {
-                logger.error("❌ Error procesando pedido ID: {} desde cola", item.getPedido().getId());
-                // Volver a agregar a la cola para siguiente intento
-                colaLocal.offer(item);
-                fallidos++;
             }
-        }
-        
-        if (procesados > 0 || fallidos > 0) {
-            logger.info("📊 Batch procesado - Exitosos: {}, Fallidos: {}, Pendientes: {}", 
-                       procesados, fallidos, colaLocal.size());
+        } catch (Exception e) {
+            logger.error("❌ Error inesperado al procesar outbox de tracking - {}", e.getMessage());
         }
     }
 
     /**
-     * Obtener estadísticas de la cola
+     * Obtener estadísticas del outbox
      */
     public ColaEstadisticas obtenerEstadisticas() {
         return new ColaEstadisticas(
-            colaLocal.size(),
+            outboxRepository.countByFallido(false),
+            outboxRepository.countByFallidoFalseAndIntentosGreaterThan(0),
+            outboxRepository.countByFallido(true),
             itemsProcesados.get(),
-            intentosFallidos.get()
+            itemsRechazados.get(),
+            lotesFallidos.get(),
+            loteActual
         );
     }
 
     /**
-     * Limpiar cola (para testing o mantenimiento)
+     * Reclama hasta {@code limite} entradas vencidas en una transacción corta: las filas
+     * bloqueadas por otra réplica se omiten y las devueltas quedan reclamadas hasta la fecha indicada
      */
-    public void limpiarCola() {
-        int size = colaLocal.size();
-        colaLocal.clear();
-        logger.warn("🧹 Cola local limpiada. Items eliminados: {}", size);
+    private List<TrackingOutbox> reclamar(int limite, LocalDateTime reclamadoHasta) {
+        return transactionTemplate.execute(estado -> {
+            List<TrackingOutbox> pendientes = outboxRepository.bloquearPendientes(LocalDateTime.now(), limite);
+            if (!pendientes.isEmpty()) {
+                outboxRepository.reclamar(pendientes.stream().map(TrackingOutbox::getPedidoId).toList(), reclamadoHasta);
+            }
+            return pendientes;
+        });
     }
 
     /**
-     * Item de la cola local
+     * Libera el reclamo de las entradas que siguen en el outbox (reprogramadas, o con un
+     * estado nuevo coalescido durante el envío), salvo que otra réplica las haya reclamado
+     * tras vencer el reclamo propio
      */
-    private static class TrackingQueueItem {
-        private final Pedido pedido;
-        private final String jwtToken;
-        private final LocalDateTime fechaCreacion;
-
-        public TrackingQueueItem(Pedido pedido, String jwtToken, LocalDateTime fechaCreacion) {
-            this.pedido = pedido;
-            this.jwtToken = jwtToken;
-            this.fechaCreacion = fechaCreacion;
+    private void liberar(List<TrackingOutbox> entradas, LocalDateTime reclamadoHasta) {
+        Timestamp reclamo = Timestamp.valueOf(reclamadoHasta);
+        List<Object[]> parametros = new ArrayList<>(entradas.size());
+        for (TrackingOutbox entrada : entradas) {
+            parametros.add(new Object[] { entrada.getPedidoId(), reclamo });
         }
+        jdbcTemplate.batchUpdate(
+            "UPDATE tracking_outbox SET reclamado_hasta = NULL WHERE pedido_id = ? AND reclamado_hasta = ?", parametros);
+    }
+
+    /**
+     * Envía un lote y confirma o reprograma cada entrada. Devuelve false si el envío falló.
+     * El despachador es secuencial, así que espera la respuesta en su propio hilo programado.
+     */
+    private boolean entregar(List<TrackingOutbox> pendientes) {
+        Map<Long, String> rechazados;
+        try {
+            rechazados = trackingClient.actualizarTrackingLote(pendientes).block();
+        } catch (RestClientException | WebClientException e) {
+            lotesFallidos.incrementAndGet();
+            loteActual = Math.max(loteMinimo, loteActual / 2);
+            posponer(pendientes, Map.of(), e.getMessage());
+            logger.warn("⚠️ Error al enviar lote de {} estados a tracking-service - {}. Próximo lote: {}",
+                       pendientes.size(), e.getMessage(), loteActual);
+            return false;
+        }
+
+        List<TrackingOutbox> confirmados = new ArrayList<>(pendientes.size());
+        List<TrackingOutbox> fallidos = new ArrayList<>();
+        for (TrackingOutbox pendiente : pendientes) {
+            if (rechazados.containsKey(pendiente.getPedidoId())) {
+                fallidos.add(pendiente);
+            } else {
+                confirmados.add(pendiente);
+            }
+        }
+
+        confirmar(confirmados);
+        if (!fallidos.isEmpty()) {
+            posponer(fallidos, rechazados, null);
+            itemsRechazados.addAndGet(fallidos.size());
+            logger.warn("⚠️ tracking-service rechazó {} estados del lote", fallidos.size());
+        }
+
+        itemsProcesados.addAndGet(confirmados.size());
+        loteActual = Math.min(loteMaximo, loteActual * 2);
+        logger.info("✅ Lote de {} estados sincronizado con tracking-service", confirmados.size());
+        return true;
+    }
 
-        public Pedido getPedido() { return pedido; }
-        public String getJwtToken() { return jwtToken; }
-        public LocalDateTime getFechaCreacion() { return fechaCreacion; }
+    /**
+     * Elimina las entradas entregadas, salvo que se hayan coalescido cambios nuevos mientras tanto
+     */
+    private void confirmar(List<TrackingOutbox> entregados) {
+        if (entregados.isEmpty()) {
+            return;
+        }
+        List<Object[]> parametros = new ArrayList<>(entregados.size());
+        for (TrackingOutbox entrada : entregados) {
+            parametros.add(new Object[] { entrada.getPedidoId(), entrada.getSecuencia() });
+        }
+        jdbcTemplate.batchUpdate("DELETE FROM tracking_outbox WHERE pedido_id = ? AND secuencia = ?", parametros);
+    }
+
+    /**
+     * Reprograma cada entrada con backoff exponencial según sus intentos previos, o la marca
+     * como fallida si agotó los intentos
+     */
+    private void posponer(List<TrackingOutbox> entradas, Map<Long, String> motivos, String errorLote) {
+        LocalDateTime ahora = LocalDateTime.now();
+        List<Object[]> parametros = new ArrayList<>(entradas.size());
+        for (TrackingOutbox entrada : entradas) {
+            int intentos = entrada.getIntentos() + 1;
+            long espera = Math.min(backoffMaximoMs, backoffInicialMs << Math.min(intentos - 1, 20));
+            String error = motivos.getOrDefault(entrada.getPedidoId(), errorLote);
+            if (error != null && error.length() > MAX_LONGITUD_ERROR) {
+                error = error.substring(0, MAX_LONGITUD_ERROR);
+            }
+            boolean fallido = intentos >= maxIntentos;
+            if (fallido) {
+                itemsFallidos.incrementAndGet();
+                logger.error("❌ Estado {} del pedido ID: {} descartado tras {} intentos - {}",
+                            entrada.getEstado(), entrada.getPedidoId(), intentos, error);
+            }
+            parametros.add(new Object[] {
+                intentos, Timestamp.valueOf(ahora.plus(Duration.ofMillis(espera))), error, fallido,
+                entrada.getPedidoId(), entrada.getSecuencia()
+            });
+        }
+        jdbcTemplate.batchUpdate(
+            "UPDATE tracking_outbox SET intentos = ?, proximo_intento = ?, ultimo_error = ?, fallido = ? " +
+            "WHERE pedido_id = ? AND secuencia = ?", parametros);
     }
 
     /**
-     * Estadísticas de la cola
+     * Estadísticas del outbox
      */
     public static class ColaEstadisticas {
-        private final int itemsPendientes;
-        private final int totalProcesados;
-        private final int totalFallidos;
+        private final long itemsPendientes;
+        private final long itemsConReintentos;
+        private final long itemsFallidos;
+        private final long totalProcesados;
+        private final long totalRechazados;
+        private final long lotesFallidos;
+        private final int loteActual;
 
-        public ColaEstadisticas(int itemsPendientes, int totalProcesados, int totalFallidos) {
+        public ColaEstadisticas(long itemsPendientes, long itemsConReintentos, long itemsFallidos,
+                                long totalProcesados, long totalRechazados, long lotesFallidos, int loteActual) {
             this.itemsPendientes = itemsPendientes;
+            this.itemsConReintentos = itemsConReintentos;
+            this.itemsFallidos = itemsFallidos;
             this.totalProcesados = totalProcesados;
-            this.totalFallidos = totalFallidos;
+            this.totalRechazados = totalRechazados;
+            this.lotesFallidos = lotesFallidos;
+            this.loteActual = loteActual;
         }
 
-        public int getItemsPendientes() { return itemsPendientes; }
-        public int getTotalProcesados() { return totalProcesados; }
-        public int getTotalFallidos() { return totalFallidos; }
+        public long getItemsPendientes() { return itemsPendientes; }
+        public long getItemsConReintentos() { return itemsConReintentos; }
+        public long getItemsFallidos() { return itemsFallidos; }
+        public long getTotalProcesados() { return totalProcesados; }
+        public long getTotalRechazados() { return totalRechazados; }
+        public long getLotesFallidos() { return lotesFallidos; }
+        public int getLoteActual() { return loteActual; }
     }
-}
\ No newline at end of file
+}
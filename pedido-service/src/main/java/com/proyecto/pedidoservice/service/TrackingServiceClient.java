@@ -1,102 +1,90 @@
 package com.proyecto.pedidoservice.service;
 
-import com.proyecto.pedidoservice.model.Pedido;
+import com.proyecto.common.http.ReactiveServiceTokenProvider;
+import com.proyecto.pedidoservice.model.TrackingOutbox;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
-import org.springframework.retry.annotation.Backoff;
-import org.springframework.retry.annotation.Recover;
-import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.reactive.function.client.WebClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
 /**
- * Cliente para comunicación con tracking-service con reintentos y cola local
+ * Cliente para comunicación con tracking-service
  */
 @Component
 public class TrackingServiceClient {
-    
+
     private static final Logger logger = LoggerFactory.getLogger(TrackingServiceClient.class);
-    
+
     @Value("${tracking.service.base.url:http://tracking-service:8084}")
     private String trackingServiceBaseUrl;
 
-    private final RestTemplate restTemplate = new RestTemplate();
-    private final TrackingQueueService queueService;
+    private final WebClient webClient;
+    private final ReactiveServiceTokenProvider tokenProvider;
 
-    public TrackingServiceClient(TrackingQueueService queueService) {
-        this.queueService = queueService;
+    public TrackingServiceClient(WebClient webClient, ReactiveServiceTokenProvider tokenProvider) {
+        this.webClient = webClient;
+        this.tokenProvider = tokenProvider;
     }
 
     /**
-     * Actualiza el tracking con reintentos automáticos
+     * Envía un lote de estados a tracking-service en una sola llamada no bloqueante,
+     * autenticada con el token de servicio. Emite los pedidos rechazados por
+     * tracking-service junto con el motivo; los errores de comunicación se emiten como
+     * WebClientException (o RestClientException si falla la obtención del token).
      */
-    @Retryable(
-        retryFor = {ResourceAccessException.class, HttpServerErrorException.class},
-        maxAttempts = 3,
-        backoff = @Backoff(delay = 1000, multiplier = 2)
-    )
-    public void actualizarTracking(Pedido pedido, String jwtToken) {
-        String trackingUrl = trackingServiceBaseUrl + "/api/tracking/" + pedido.getId();
-        logger.info("Intentando actualizar tracking para pedido ID: {} con URL: {}", pedido.getId(), trackingUrl);
-        logger.debug("JWT Token length: {}", jwtToken != null ? jwtToken.length() : "null");
-        
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setBearerAuth(jwtToken);
-        
-        // Crear payload para el endpoint POST /{pedidoId}
-        Map<String, String> payload = new HashMap<>();
-        payload.put("estado", pedido.getEstado());
-        
-        HttpEntity<Map<String, String>> entity = new HttpEntity<>(payload, headers);
-        
-        try {
-            ResponseEntity<String> response = restTemplate.postForEntity(trackingUrl, entity, String.class);
-            if (response.getStatusCode().is2xxSuccessful()) {
-                logger.info("✅ Tracking actualizado exitosamente para pedido ID: {}", pedido.getId());
-            } else {
-                logger.warn("⚠️ Respuesta inesperada del tracking-service: {}", response.getStatusCode());
-            }
-        } catch (Exception e) {
-            logger.error("❌ Error al actualizar tracking para pedido ID: {} - {}", pedido.getId(), e.getMessage());
-            throw e; // Re-lanzar para que @Retryable pueda manejarlo
+    public Mono<Map<Long, String>> actualizarTrackingLote(List<TrackingOutbox> pendientes) {
+        List<Map<String, Object>> payload = new ArrayList<>(pendientes.size());
+        for (TrackingOutbox pendiente : pendientes) {
+            payload.add(Map.of("id", pendiente.getPedidoId(), "estado", pendiente.getEstado()));
         }
+
+        return tokenProvider.obtenerTokenReactivo()
+            .flatMap(token -> webClient.post()
+                .uri(trackingServiceBaseUrl + "/api/tracking/update/batch")
+                .headers(headers -> headers.setBearerAuth(token))
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(payload)
+                .retrieve()
+                .bodyToMono(RespuestaLote.class))
+            .map(respuesta -> {
+                Map<Long, String> rechazados = new HashMap<>();
+                if (respuesta.getRechazados() != null) {
+                    for (Rechazo rechazo : respuesta.getRechazados()) {
+                        rechazados.put(Long.valueOf(rechazo.getPedidoId()), rechazo.getMotivo());
+                    }
+                }
+                logger.debug("Lote de {} estados enviado a tracking-service - {} rechazados",
+                             pendientes.size(), rechazados.size());
+                return rechazados;
+            })
+            .defaultIfEmpty(Collections.emptyMap());
     }
 
     /**
-     * Método de recuperación cuando fallan todos los reintentos
+     * Respuesta de POST /api/tracking/update/batch
      */
-    @Recover
-    public void recover(Exception ex, Pedido pedido, String jwtToken) {
-        logger.error("🔄 Todos los reintentos fallaron para pedido ID: {}. Agregando a cola local.", pedido.getId());
-        
-        // Agregar a cola local para procesamiento posterior
-        queueService.agregarACola(pedido, jwtToken);
-        
-        // Opcional: Notificar a sistema de monitoreo
-        logger.warn("📋 Pedido ID: {} agregado a cola local para reintento posterior", pedido.getId());
+    public static class RespuestaLote {
+        private int aplicados;
+        private List<Rechazo> rechazados;
+
+        public int getAplicados() { return aplicados; }
+        public void setAplicados(int aplicados) { this.aplicados = aplicados; }
+        public List<Rechazo> getRechazados() { return rechazados; }
+        public void setRechazados(List<Rechazo> rechazados) { this.rechazados = rechazados; }
     }
 
-    /**
-     * Método público para forzar reintento desde la cola
-     */
-    public boolean intentarActualizacionDesdeCola(Pedido pedido, String jwtToken) {
-        try {
-            actualizarTracking(pedido, jwtToken);
-            return true;
-        } catch (Exception e) {
-            logger.error("❌ Fallo reintento desde cola para pedido ID: {}", pedido.getId());
-            return false;
-        }
+    public static class Rechazo {
+        private String pedidoId;
+        private String motivo;
+
+        public String getPedidoId() { return pedidoId; }
+        public void setPedidoId(String pedidoId) { this.pedidoId = pedidoId; }
+        public String getMotivo() { return motivo; }
+        public void setMotivo(String motivo) { this.motivo = motivo; }
     }
 }
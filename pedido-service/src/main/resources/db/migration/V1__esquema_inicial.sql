@@ -0,0 +1,13 @@
+-- Esquema inicial de pedido-service, equivalente al generado antes por ddl-auto.
+-- Las bases existentes se registran en esta versión (baseline) sin ejecutarla: no agregar
+-- aquí tablas que esas bases no tengan.
+CREATE TABLE IF NOT EXISTS pedidos (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    producto VARCHAR(255) NOT NULL,
+    cliente_id BIGINT NOT NULL,
+    direccion VARCHAR(255) NOT NULL,
+    estado VARCHAR(255) NOT NULL,
+    fecha_creacion DATETIME(6) NOT NULL,
+    fecha_actualizacion DATETIME(6) NOT NULL,
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
@@ -0,0 +1,13 @@
+-- Outbox persistente de notificaciones hacia tracking-service. Las bases registradas en la
+-- versión 1 no la tienen; IF NOT EXISTS por si ddl-auto ya la había creado.
+CREATE TABLE IF NOT EXISTS tracking_outbox (
+    pedido_id BIGINT NOT NULL,
+    estado VARCHAR(255) NOT NULL,
+    fecha_evento DATETIME(6) NOT NULL,
+    secuencia BIGINT NOT NULL,
+    intentos INT NOT NULL,
+    proximo_intento DATETIME(6) NOT NULL,
+    ultimo_error VARCHAR(500),
+    fecha_creacion DATETIME(6) NOT NULL,
+    PRIMARY KEY (pedido_id)
+) ENGINE = InnoDB;
@@ -0,0 +1,7 @@
+-- Listados paginados por keyset (WHERE filtro = ? AND id < ? ORDER BY id DESC):
+-- el índice compuesto resuelve filtro y orden sin recorrer la tabla ni ordenar en memoria
+CREATE INDEX idx_pedidos_cliente_id ON pedidos (cliente_id, id);
+CREATE INDEX idx_pedidos_estado_id ON pedidos (estado, id);
+
+-- Despachador del outbox: entradas vencidas ordenadas por próximo intento
+CREATE INDEX idx_tracking_outbox_proximo_intento ON tracking_outbox (proximo_intento);
@@ -0,0 +1,2 @@
+-- Columna de bloqueo optimista; los pedidos existentes parten de la versión 0
+ALTER TABLE pedidos ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,8 @@
+-- Secuencia de ids de pedidos emulada con una tabla (MySQL no tiene secuencias).
+-- Hibernate reserva bloques de allocationSize (50) ids: lee next_val como el mayor id del
+-- bloque y lo incrementa. Se inicializa para que el primer bloque empiece tras el mayor id existente.
+CREATE TABLE pedidos_seq (
+    next_val BIGINT NOT NULL
+) ENGINE = InnoDB;
+
+INSERT INTO pedidos_seq (next_val) SELECT COALESCE(MAX(id), 0) + 50 FROM pedidos;
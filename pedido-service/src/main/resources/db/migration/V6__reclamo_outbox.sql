@@ -0,0 +1,7 @@
+-- Despacho del outbox con varias réplicas: cada réplica reclama sus filas hasta reclamado_hasta
+-- (SELECT ... FOR UPDATE SKIP LOCKED), y las que agotan sus intentos quedan marcadas como fallidas
+ALTER TABLE tracking_outbox ADD COLUMN reclamado_hasta DATETIME(6) NULL;
+ALTER TABLE tracking_outbox ADD COLUMN fallido BOOLEAN NOT NULL DEFAULT FALSE;
+
+CREATE INDEX idx_tracking_outbox_fallido_proximo_intento ON tracking_outbox (fallido, proximo_intento);
+DROP INDEX idx_tracking_outbox_proximo_intento ON tracking_outbox;
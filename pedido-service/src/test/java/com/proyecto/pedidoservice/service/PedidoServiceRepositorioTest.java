@@ -0,0 +1,226 @@
+package com.proyecto.pedidoservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.proyecto.pedidoservice.dto.CambioEstadoPedido;
+import com.proyecto.pedidoservice.dto.SincronizacionEstadoRequest;
+import com.proyecto.pedidoservice.repository.PedidoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.client.RestTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+/**
+ * Sentencias condicionales de PedidoService sobre el esquema de las migraciones (H2 en modo MySQL).
+ * Cada prueba se ejecuta en una transacción que se revierte al terminar.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+class PedidoServiceRepositorioTest {
+
+    private static final LocalDateTime FECHA = LocalDateTime.parse("2026-10-14T17:47:30");
+
+    @Autowired
+    private PedidoRepository pedidoRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TrackingQueueService trackingQueueService;
+    private PedidoService pedidoService;
+
+    @BeforeEach
+    void crearServicio() {
+        trackingQueueService = mock(TrackingQueueService.class);
+        pedidoService = new PedidoService(pedidoRepository, trackingQueueService, jdbcTemplate, transactionManager,
+            mock(ReconciliacionService.class), mock(ClienteValidacionService.class), mock(RestTemplate.class),
+            new ObjectMapper(), mock(Executor.class));
+    }
+
+    @Test
+    void aplicaUnaTransicionValidaConVersionEsperada() {
+        insertarPedido(1L, "PENDIENTE", FECHA, 3L);
+
+        CambioEstadoPedido cambio = pedidoService.actualizarEstadoPedido(1L, "PROCESANDO", 3L);
+
+        assertTrue(cambio.isAplicado());
+        assertEquals("PROCESANDO", cambio.getEstado());
+        assertEquals(4L, cambio.getVersion());
+        Map<String, Object> fila = leerPedido(1L);
+        assertEquals("PROCESANDO", fila.get("estado"));
+        assertEquals(4L, ((Number) fila.get("version")).longValue());
+        assertTrue(((Timestamp) fila.get("fecha_actualizacion")).toLocalDateTime().isAfter(FECHA));
+        verify(trackingQueueService).registrar(1L, "PROCESANDO", cambio.getFechaActualizacion());
+    }
+
+    @Test
+    void sinVersionEsperadaDevuelveLaVersionResultante() {
+        insertarPedido(1L, "ENVIADO", FECHA, 7L);
+
+        CambioEstadoPedido cambio = pedidoService.actualizarEstadoPedido(1L, "CANCELADO", null);
+
+        assertTrue(cambio.isAplicado());
+        assertEquals(8L, cambio.getVersion());
+        assertEquals("CANCELADO", leerPedido(1L).get("estado"));
+    }
+
+    @Test
+    void rechazaUnaTransicionInvalida() {
+        insertarPedido(1L, "ENTREGADO", FECHA, 2L);
+
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+            () -> pedidoService.actualizarEstadoPedido(1L, "CANCELADO", 2L));
+
+        assertEquals("Transición no permitida: ENTREGADO → CANCELADO", error.getMessage());
+        assertSinCambios(1L, "ENTREGADO", 2L);
+    }
+
+    @Test
+    void pedirElEstadoActualNoModificaElPedido() {
+        insertarPedido(1L, "ENVIADO", FECHA, 5L);
+
+        CambioEstadoPedido cambio = pedidoService.actualizarEstadoPedido(1L, "ENVIADO", null);
+
+        assertFalse(cambio.isAplicado());
+        assertEquals("ENVIADO", cambio.getEstado());
+        assertEquals(5L, cambio.getVersion());
+        assertEquals(FECHA, cambio.getFechaActualizacion());
+        assertSinCambios(1L, "ENVIADO", 5L);
+    }
+
+    @Test
+    void rechazaUnaVersionDesactualizada() {
+        insertarPedido(1L, "PENDIENTE", FECHA, 4L);
+
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+            () -> pedidoService.actualizarEstadoPedido(1L, "PROCESANDO", 3L));
+
+        assertEquals("El pedido fue modificado (versión actual 4)", error.getMessage());
+        assertSinCambios(1L, "PENDIENTE", 4L);
+    }
+
+    @Test
+    void fallaSiElPedidoNoExiste() {
+        RuntimeException error = assertThrows(RuntimeException.class,
+            () -> pedidoService.actualizarEstadoPedido(99L, "PROCESANDO", null));
+
+        assertEquals("Pedido no encontrado", error.getMessage());
+        verify(trackingQueueService, never()).registrar(anyLong(), anyString(), any());
+    }
+
+    @Test
+    void rechazaEstadosDesconocidos() {
+        insertarPedido(1L, "PENDIENTE", FECHA, 0L);
+
+        assertThrows(IllegalArgumentException.class,
+            () -> pedidoService.actualizarEstadoPedido(1L, "PERDIDO", null));
+        assertSinCambios(1L, "PENDIENTE", 0L);
+    }
+
+    @Test
+    void sincronizaUnLoteMixto() {
+        insertarPedido(1L, "PENDIENTE", FECHA, 0L);
+        insertarPedido(2L, "ENVIADO", FECHA, 3L);
+        insertarPedido(3L, "PROCESANDO", FECHA, 1L);
+        insertarPedido(4L, "ENTREGADO", FECHA, 4L);
+        insertarPedido(5L, "ENVIADO", FECHA, 2L);
+
+        Map<String, Object> resultado = pedidoService.sincronizarLoteDesdeTracking(Arrays.asList(
+            // Reciente y válida
+            new SincronizacionEstadoRequest(1L, "PROCESANDO", FECHA.plusSeconds(10)),
+            // Anterior a la registrada en MySQL
+            new SincronizacionEstadoRequest(2L, "ENTREGADO", FECHA.minusSeconds(10)),
+            // Misma fecha que la registrada: también obsoleta
+            new SincronizacionEstadoRequest(3L, "ENVIADO", FECHA),
+            // Reciente pero fuera de la máquina de estados
+            new SincronizacionEstadoRequest(4L, "PROCESANDO", FECHA.plusSeconds(10)),
+            // Reciente y con el estado que ya tiene
+            new SincronizacionEstadoRequest(5L, "ENVIADO", FECHA.plusSeconds(10)),
+            // Pedido inexistente
+            new SincronizacionEstadoRequest(99L, "CANCELADO", FECHA.plusSeconds(10)),
+            // Sin estado
+            new SincronizacionEstadoRequest(1L, null, FECHA.plusSeconds(20))));
+
+        assertEquals(Map.of(
+            "recibidos", 7,
+            "aplicados", 1,
+            "obsoletos", 2,
+            "transicionesInvalidas", 1,
+            "sinCambios", 1,
+            "noEncontrados", 1,
+            "rechazados", 1), resultado);
+
+        Map<String, Object> aplicado = leerPedido(1L);
+        assertEquals("PROCESANDO", aplicado.get("estado"));
+        assertEquals(1L, ((Number) aplicado.get("version")).longValue());
+        assertEquals(FECHA.plusSeconds(10), ((Timestamp) aplicado.get("fecha_actualizacion")).toLocalDateTime());
+        assertSinCambios(2L, "ENVIADO", 3L);
+        assertSinCambios(3L, "PROCESANDO", 1L);
+        assertSinCambios(4L, "ENTREGADO", 4L);
+        assertSinCambios(5L, "ENVIADO", 2L);
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM pedidos WHERE id = 99", Integer.class));
+        // El cambio proviene de tracking-service: no se vuelve a notificar
+        verifyNoInteractions(trackingQueueService);
+    }
+
+    @Test
+    void aplicaLaActualizacionMasRecienteDeCadaPedido() {
+        insertarPedido(1L, "PENDIENTE", FECHA, 0L);
+
+        Map<String, Object> resultado = pedidoService.sincronizarLoteDesdeTracking(List.of(
+            new SincronizacionEstadoRequest(1L, "CANCELADO", FECHA.plusSeconds(30)),
+            new SincronizacionEstadoRequest(1L, "PROCESANDO", FECHA.plusSeconds(10))));
+
+        assertEquals(1, resultado.get("aplicados"));
+        assertEquals(0, resultado.get("obsoletos"));
+        Map<String, Object> fila = leerPedido(1L);
+        assertEquals("CANCELADO", fila.get("estado"));
+        assertEquals(FECHA.plusSeconds(30), ((Timestamp) fila.get("fecha_actualizacion")).toLocalDateTime());
+    }
+
+    private void insertarPedido(long id, String estado, LocalDateTime fechaActualizacion, long version) {
+        jdbcTemplate.update(
+            "INSERT INTO pedidos (id, producto, cliente_id, direccion, estado, fecha_creacion, fecha_actualizacion, version) " +
+            "VALUES (?, 'Teclado', 1, 'Av. Amazonas 123', ?, ?, ?, ?)",
+            id, estado, Timestamp.valueOf(FECHA), Timestamp.valueOf(fechaActualizacion), version);
+    }
+
+    private Map<String, Object> leerPedido(long id) {
+        return jdbcTemplate.queryForMap("SELECT estado, fecha_actualizacion, version FROM pedidos WHERE id = ?", id);
+    }
+
+    private void assertSinCambios(long id, String estado, long version) {
+        Map<String, Object> fila = leerPedido(id);
+        assertEquals(estado, fila.get("estado"));
+        assertEquals(version, ((Number) fila.get("version")).longValue());
+        assertEquals(FECHA, ((Timestamp) fila.get("fecha_actualizacion")).toLocalDateTime());
+        verify(trackingQueueService, never()).registrar(anyLong(), anyString(), any());
+    }
+}
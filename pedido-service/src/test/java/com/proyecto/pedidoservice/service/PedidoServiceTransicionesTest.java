@@ -0,0 +1,41 @@
+package com.proyecto.pedidoservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class PedidoServiceTransicionesTest {
+
+    private static final List<String> ESTADOS = List.of("PENDIENTE", "PROCESANDO", "ENVIADO", "ENTREGADO", "CANCELADO");
+
+    // PENDIENTE → PROCESANDO → ENVIADO → ENTREGADO; se cancela desde cualquier estado no final
+    private static final Set<String> VALIDAS = Set.of(
+        "PENDIENTE → PROCESANDO",
+        "PROCESANDO → ENVIADO",
+        "ENVIADO → ENTREGADO",
+        "PENDIENTE → CANCELADO",
+        "PROCESANDO → CANCELADO",
+        "ENVIADO → CANCELADO");
+
+    @Test
+    void soloPermiteLasTransicionesDeLaMaquinaDeEstados() {
+        for (String actual : ESTADOS) {
+            for (String nuevo : ESTADOS) {
+                String transicion = actual + " → " + nuevo;
+                assertEquals(VALIDAS.contains(transicion), PedidoService.esTransicionValida(actual, nuevo), transicion);
+            }
+        }
+    }
+
+    @Test
+    void rechazaEstadosDesconocidos() {
+        assertFalse(PedidoService.esTransicionValida("PENDIENTE", "PERDIDO"));
+        assertFalse(PedidoService.esTransicionValida("PERDIDO", "CANCELADO"));
+        assertFalse(PedidoService.esTransicionValida(null, "PROCESANDO"));
+        assertFalse(PedidoService.esTransicionValida("PENDIENTE", null));
+    }
+}
@@ -0,0 +1,121 @@
+package com.proyecto.trackingservice.config;
+
+import com.proyecto.trackingservice.service.TrackingCacheService;
+import com.proyecto.trackingservice.service.TrackingStreamService;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.SocketOptions;
+import io.lettuce.core.TimeoutOptions;
+import io.lettuce.core.metrics.MicrometerOptions;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.commonspool2.CommonsObjectPool2Metrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.data.redis.LettuceClientConfigurationBuilderCustomizer;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.time.Duration;
+
+/**
+ * Cliente Redis (Lettuce) de tracking-service.
+ *
+ * Los comandos comunes comparten una única conexión multiplexada; los pipelines usan
+ * conexiones dedicadas de un pool acotado ({@code spring.data.redis.lettuce.pool}) en lugar
+ * de abrir una conexión por lote. Los timeouts de comando se aplican también a los comandos
+ * asíncronos y con Redis desconectado los comandos se rechazan en vez de acumularse.
+ * Métricas: latencia por comando ({@code lettuce.command.*}) y uso del pool
+ * ({@code commons.pool2.*}). Los eventos de cambio de estado se reciben por pub/sub en
+ * dos contenedores de listeners, cada uno con su conexión y su hilo: uno para el streaming
+ * SSE y otro para invalidar la caché local, de modo que un pico de eventos SSE no retrasa
+ * las invalidaciones.
+ */
+@Configuration
+public class RedisConfig {
+
+    @Bean
+    public LettuceClientConfigurationBuilderCustomizer opcionesClienteRedis(RedisProperties propiedades) {
+        Duration timeoutConexion = propiedades.getConnectTimeout() != null ?
+            propiedades.getConnectTimeout() : Duration.ofSeconds(SocketOptions.DEFAULT_CONNECT_TIMEOUT);
+        return builder -> builder.clientOptions(ClientOptions.builder()
+            .autoReconnect(true)
+            .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
+            // Sin argumento usa el timeout de comando de la conexión (spring.data.redis.timeout)
+            .timeoutOptions(TimeoutOptions.enabled())
+            .socketOptions(SocketOptions.builder()
+                .connectTimeout(timeoutConexion)
+                .keepAlive(true)
+                .build())
+            .build());
+    }
+
+    /**
+     * Latencias de comandos con histograma para poder consultar percentiles
+     */
+    @Bean
+    public MicrometerOptions opcionesMetricasRedis() {
+        return MicrometerOptions.builder()
+            .histogram(true)
+            .build();
+    }
+
+    @Bean
+    public MeterBinder metricasPoolRedis() {
+        return new CommonsObjectPool2Metrics();
+    }
+
+    /**
+     * Suscripción al canal de eventos de tracking para el streaming SSE
+     */
+    @Bean
+    public RedisMessageListenerContainer contenedorEventosTracking(RedisConnectionFactory connectionFactory,
+                                                                   TrackingStreamService streamService,
+                                                                   @Value("${tracking.stream.cola-eventos:10000}") int colaEventos) {
+        // Un solo hilo de reparto: los eventos de un pedido se entregan en el orden publicado
+        // y no se crea un hilo por mensaje (comportamiento por defecto del contenedor).
+        // El hilo solo encola en el buffer de cada conexión SSE; si aun así la cola se llena
+        // los eventos se descartan en lugar de acumularse sin límite
+        ThreadPoolTaskExecutor reparto = new ThreadPoolTaskExecutor();
+        reparto.setCorePoolSize(1);
+        reparto.setMaxPoolSize(1);
+        reparto.setQueueCapacity(colaEventos);
+        reparto.setRejectedExecutionHandler((tarea, executor) -> streamService.registrarEventoDescartado());
+        reparto.setThreadNamePrefix("tracking-eventos-");
+        reparto.setDaemon(true);
+        reparto.initialize();
+
+        RedisMessageListenerContainer contenedor = new RedisMessageListenerContainer();
+        contenedor.setConnectionFactory(connectionFactory);
+        contenedor.setTaskExecutor(reparto);
+        contenedor.addMessageListener(streamService, new ChannelTopic(TrackingStreamService.CANAL_EVENTOS));
+        return contenedor;
+    }
+
+    /**
+     * Suscripción al canal de eventos de tracking para invalidar la caché local
+     */
+    @Bean
+    public RedisMessageListenerContainer contenedorInvalidacionCache(RedisConnectionFactory connectionFactory,
+                                                                     TrackingCacheService cacheService,
+                                                                     @Value("${tracking.cache.cola-invalidaciones:10000}") int colaInvalidaciones) {
+        // Si la cola se llena no se puede saber qué pedidos quedaron sin invalidar:
+        // se vacía toda la caché, que es siempre correcto
+        ThreadPoolTaskExecutor invalidacion = new ThreadPoolTaskExecutor();
+        invalidacion.setCorePoolSize(1);
+        invalidacion.setMaxPoolSize(1);
+        invalidacion.setQueueCapacity(colaInvalidaciones);
+        invalidacion.setRejectedExecutionHandler((tarea, executor) -> cacheService.invalidarTodo());
+        invalidacion.setThreadNamePrefix("tracking-cache-");
+        invalidacion.setDaemon(true);
+        invalidacion.initialize();
+
+        RedisMessageListenerContainer contenedor = new RedisMessageListenerContainer();
+        contenedor.setConnectionFactory(connectionFactory);
+        contenedor.setTaskExecutor(invalidacion);
+        contenedor.addMessageListener(cacheService, new ChannelTopic(TrackingStreamService.CANAL_EVENTOS));
+        return contenedor;
+    }
+}
@@ -0,0 +1,96 @@
+package com.proyecto.trackingservice.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Configuración de los scripts Lua ejecutados en Redis
+ */
+@Configuration
+public class RedisScriptConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisScriptConfig.class);
+
+    /**
+     * Script de transición atómica de estado (estado, historial y contadores en un solo round trip)
+     */
+    @Bean
+    public RedisScript<String> transicionEstadoScript() {
+        return RedisScript.of(new ClassPathResource("scripts/transicion_estado.lua"), String.class);
+    }
+
+    /**
+     * Script de lectura de estados, compatible con el formato hash y el JSON anterior
+     */
+    @Bean
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public RedisScript<List<String>> lecturaTrackingScript() {
+        return (RedisScript) RedisScript.of(new ClassPathResource("scripts/leer_tracking.lua"), List.class);
+    }
+
+    /**
+     * Script de conteo por lotes de la reconstrucción de estadísticas
+     */
+    @Bean
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public RedisScript<List<Long>> conteoEstadisticasScript() {
+        return (RedisScript) RedisScript.of(new ClassPathResource("scripts/contar_estadisticas.lua"), List.class);
+    }
+
+    /**
+     * Script de conversión de claves de tracking del formato JSON a hash
+     */
+    @Bean
+    public RedisScript<Long> migracionTrackingScript() {
+        return RedisScript.of(new ClassPathResource("scripts/migrar_tracking.lua"), Long.class);
+    }
+
+    /**
+     * Script de lectura del historial, compatible con el formato compacto y la lista JSON anterior.
+     * Devuelve valores binarios: debe ejecutarse con un serializador de resultados de bytes.
+     */
+    @Bean
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public RedisScript<List<byte[]>> lecturaHistorialScript() {
+        return (RedisScript) RedisScript.of(new ClassPathResource("scripts/leer_historial.lua"), List.class);
+    }
+
+    /**
+     * Script de conversión de historiales de lista JSON al formato compacto
+     */
+    @Bean
+    public RedisScript<Long> migracionHistorialScript() {
+        return RedisScript.of(new ClassPathResource("scripts/migrar_historial.lua"), Long.class);
+    }
+
+    /**
+     * Registra los scripts con SCRIPT LOAD al arrancar para que la primera
+     * transición ya se ejecute con EVALSHA
+     */
+    @Bean
+    public ApplicationRunner registrarScriptsRedis(StringRedisTemplate redisTemplate, List<RedisScript<?>> scripts) {
+        return args -> {
+            for (RedisScript<?> script : scripts) {
+                try {
+                    byte[] cuerpo = script.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+                    String sha = redisTemplate.execute(
+                        (RedisCallback<String>) connection -> connection.scriptingCommands().scriptLoad(cuerpo));
+                    logger.info("📜 Script Lua registrado en Redis - SHA: {}", sha);
+                } catch (Exception e) {
+                    logger.warn("⚠️ No se pudo registrar script Lua al arrancar, se cargará en la primera ejecución - {}",
+                               e.getMessage());
+                }
+            }
+        };
+    }
+}
@@ -1,15 +1,27 @@
 package com.proyecto.trackingservice.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import com.proyecto.trackingservice.service.PedidoSyncDispatcher;
+import com.proyecto.trackingservice.service.TrackingEstadisticasService;
+import com.proyecto.trackingservice.service.TrackingMigracionService;
 import com.proyecto.trackingservice.service.TrackingService;
+import com.proyecto.trackingservice.service.TrackingStreamService;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -19,10 +31,23 @@ public class TrackingController {
     
     private static final Logger logger = LoggerFactory.getLogger(TrackingController.class);
     private final TrackingService trackingService;
+    private final TrackingEstadisticasService estadisticasService;
+    private final PedidoSyncDispatcher pedidoSyncDispatcher;
+    private final TrackingStreamService streamService;
+    private final TrackingMigracionService migracionService;
+
+    @Value("${tracking.batch.max-ids:1000}")
+    private int maxIdsPorLote;
 
     @Autowired
-    public TrackingController(TrackingService trackingService) {
+    public TrackingController(TrackingService trackingService, TrackingEstadisticasService estadisticasService,
+                              PedidoSyncDispatcher pedidoSyncDispatcher, TrackingStreamService streamService,
+                              TrackingMigracionService migracionService) {
         this.trackingService = trackingService;
+        this.estadisticasService = estadisticasService;
+        this.pedidoSyncDispatcher = pedidoSyncDispatcher;
+        this.streamService = streamService;
+        this.migracionService = migracionService;
     }
 
     /**
@@ -43,11 +68,95 @@ public class TrackingController {
         }
     }
 
+    /**
+     * Obtiene el estado actual de varios pedidos en una sola llamada
+     */
+    @PostMapping("/batch")
+    @PreAuthorize("hasAnyRole('ADMIN','CLIENTE','SERVICE')")
+    public ResponseEntity<?> getEstadosPedidos(@RequestBody List<String> pedidoIds,
+                                               @RequestParam(required = false) String campos) {
+        if (pedidoIds == null || pedidoIds.isEmpty()) {
+            return ResponseEntity.badRequest().body("Debe indicar al menos un ID de pedido");
+        }
+        if (pedidoIds.size() > maxIdsPorLote) {
+            return ResponseEntity.badRequest().body("Se permiten como máximo " + maxIdsPorLote + " IDs por consulta");
+        }
+        try {
+            // campos=estado omite la fecha de actualización (p. ej. para la reconciliación)
+            return ResponseEntity.ok(trackingService.getEstadosPedidos(pedidoIds, "estado".equals(campos)));
+        } catch (Exception e) {
+            logger.error("❌ Error al obtener estados por lote - {}", e.getMessage());
+            return ResponseEntity.internalServerError().body("Error al obtener estados de pedidos");
+        }
+    }
+
+    /**
+     * Stream SSE con el estado actual de los pedidos indicados y sus cambios posteriores
+     * (eventos "estado"). Reemplaza la consulta periódica de cada pedido. Los rechazos
+     * se responden solo con el código de estado, ya que el cuerpo debe ser un stream SSE.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasAnyRole('ADMIN','CLIENTE')")
+    public ResponseEntity<SseEmitter> streamEstados(@RequestParam(required = false) List<String> pedidoIds) {
+        try {
+            return respuestaStream(streamService.suscribir(pedidoIds != null ? pedidoIds : List.of()));
+        } catch (IllegalArgumentException e) {
+            logger.warn("⚠️ Stream de tracking rechazado - {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            logger.warn("⚠️ Stream de tracking rechazado - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (Exception e) {
+            logger.error("❌ Error al abrir stream de tracking - {}", e.getMessage());
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Stream SSE de los pedidos de un cliente
+     */
+    @GetMapping(value = "/stream/cliente/{clienteId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasAnyRole('ADMIN','CLIENTE')")
+    public ResponseEntity<SseEmitter> streamEstadosCliente(@PathVariable Long clienteId) {
+        try {
+            return respuestaStream(streamService.suscribirCliente(clienteId));
+        } catch (IllegalArgumentException e) {
+            logger.warn("⚠️ Stream de tracking rechazado para cliente ID: {} - {}", clienteId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            logger.warn("⚠️ Stream de tracking rechazado para cliente ID: {} - {}", clienteId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (RestClientException e) {
+            logger.error("❌ Error al obtener pedidos del cliente ID: {} desde pedido-service - {}", clienteId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).build();
+        } catch (Exception e) {
+            logger.error("❌ Error al abrir stream de tracking para cliente ID: {} - {}", clienteId, e.getMessage());
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Conexiones SSE activas y eventos reenviados (solo admin)
+     */
+    @GetMapping("/stream/estadisticas")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getEstadisticasStream() {
+        return ResponseEntity.ok(streamService.obtenerEstadisticas());
+    }
+
+    // Sin caché y sin buffering en proxies intermedios (nginx respeta X-Accel-Buffering)
+    private ResponseEntity<SseEmitter> respuestaStream(SseEmitter emitter) {
+        return ResponseEntity.ok()
+            .cacheControl(CacheControl.noCache())
+            .header("X-Accel-Buffering", "no")
+            .body(emitter);
+    }
+
     /**
      * Actualiza el estado de un pedido (endpoint directo)
      */
     @PostMapping("/{pedidoId}")
-    @PreAuthorize("hasRole('ADMIN')")
+    @PreAuthorize("hasAnyRole('ADMIN','SERVICE')")
     public ResponseEntity<?> actualizarEstadoPedido(@PathVariable String pedidoId, @RequestBody EstadoRequest request, @AuthenticationPrincipal Jwt jwt) {
         try {
             trackingService.actualizarEstadoPedido(pedidoId, request.getEstado());
@@ -69,7 +178,7 @@ public class TrackingController {
     public ResponseEntity<?> actualizarTracking(@RequestBody PedidoDTO pedido, @AuthenticationPrincipal Jwt jwt) {
         try {
             trackingService.actualizarEstadoPedido(String.valueOf(pedido.getId()), pedido.getEstado());
-            logger.info("🔄 Tracking actualizado via consistencia eventual para pedido ID: {} desde pedido-service", pedido.getId());
+            logger.debug("🔄 Tracking actualizado via consistencia eventual para pedido ID: {} desde pedido-service", pedido.getId());
             return ResponseEntity.ok().build();
         } catch (IllegalArgumentException e) {
             logger.warn("⚠️ Estado inválido en consistencia eventual para pedido ID: {} - {}", pedido.getId(), e.getMessage());
@@ -80,6 +189,38 @@ public class TrackingController {
         }
     }
 
+    /**
+     * Aplica por lotes los estados enviados por el outbox de pedido-service
+     */
+    @PostMapping("/update/batch")
+    @PreAuthorize("hasAnyRole('ADMIN','SERVICE')")
+    public ResponseEntity<?> actualizarTrackingLote(@RequestBody List<PedidoDTO> pedidos) {
+        if (pedidos == null || pedidos.isEmpty()) {
+            return ResponseEntity.badRequest().body("Debe indicar al menos un pedido");
+        }
+        if (pedidos.size() > maxIdsPorLote) {
+            return ResponseEntity.badRequest().body("Se permiten como máximo " + maxIdsPorLote + " pedidos por lote");
+        }
+        try {
+            Map<String, String> estados = new LinkedHashMap<>();
+            for (PedidoDTO pedido : pedidos) {
+                estados.put(String.valueOf(pedido.getId()), pedido.getEstado());
+            }
+
+            List<Map<String, String>> rechazados = new ArrayList<>();
+            trackingService.actualizarEstadosLote(estados).forEach((pedidoId, motivo) ->
+                rechazados.add(Map.of("pedidoId", pedidoId, "motivo", motivo)));
+
+            return ResponseEntity.ok(Map.of(
+                "aplicados", estados.size() - rechazados.size(),
+                "rechazados", rechazados
+            ));
+        } catch (Exception e) {
+            logger.error("❌ Error al aplicar lote de consistencia eventual - {}", e.getMessage());
+            return ResponseEntity.internalServerError().body("Error al actualizar tracking por lote");
+        }
+    }
+
     /**
      * Obtiene el historial de cambios de un pedido
      */
@@ -111,6 +252,55 @@ public class TrackingController {
         }
     }
 
+    /**
+     * Lanza la reconstrucción de los contadores de estadísticas (solo admin)
+     */
+    @PostMapping("/estadisticas/reconstruir")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> reconstruirEstadisticas(@AuthenticationPrincipal Jwt jwt) {
+        estadisticasService.reconstruirContadores();
+        logger.info("🔄 Reconstrucción de estadísticas solicitada por usuario: {}", jwt.getSubject());
+        return ResponseEntity.accepted().body(estadisticasService.obtenerEstadoReconstruccion());
+    }
+
+    /**
+     * Consulta el estado de la última reconstrucción de estadísticas (solo admin)
+     */
+    @GetMapping("/estadisticas/reconstruir")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getEstadoReconstruccion() {
+        return ResponseEntity.ok(estadisticasService.obtenerEstadoReconstruccion());
+    }
+
+    /**
+     * Lanza la migración de claves de tracking e historiales desde sus formatos anteriores (solo admin)
+     */
+    @PostMapping("/almacenamiento/migrar")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> migrarAlmacenamiento(@AuthenticationPrincipal Jwt jwt) {
+        migracionService.migrar();
+        logger.info("🔄 Migración de almacenamiento de tracking solicitada por usuario: {}", jwt.getSubject());
+        return ResponseEntity.accepted().body(migracionService.obtenerEstadoMigracion());
+    }
+
+    /**
+     * Consulta el progreso de la migración de almacenamiento (solo admin)
+     */
+    @GetMapping("/almacenamiento/migrar")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getEstadoMigracion() {
+        return ResponseEntity.ok(migracionService.obtenerEstadoMigracion());
+    }
+
+    /**
+     * Estado del outbox de notificaciones hacia pedido-service (solo admin)
+     */
+    @GetMapping("/outbox/estadisticas")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getEstadisticasOutbox() {
+        return ResponseEntity.ok(pedidoSyncDispatcher.obtenerEstadisticas());
+    }
+
     /**
      * Endpoint para sincronizar un pedido específico (cuando no existe tracking)
      */
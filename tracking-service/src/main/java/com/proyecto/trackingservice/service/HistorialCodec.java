@@ -0,0 +1,134 @@
+package com.proyecto.trackingservice.service;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Codificación compacta del historial de un pedido ({@code historial:{pedidoId}}).
+ *
+ * Un único valor binario: un byte de versión y, de la entrada más antigua a la más reciente,
+ * un byte con los ordinales de ambos estados ({@code (anterior + 1) * 16 + nuevo}, con
+ * anterior -1 en la entrada inicial) seguido de los segundos transcurridos desde la entrada
+ * previa (la primera, desde 0) como varint zigzag. Los segundos son los de la fecha local del
+ * servicio tomada como UTC, coherente con los timestamps ISO locales que expone la API.
+ * transicion_estado.lua escribe el mismo formato; admite hasta 15 estados.
+ */
+final class HistorialCodec {
+
+    static final byte VERSION = 1;
+
+    private static final int MAX_ESTADOS = 15;
+
+    private HistorialCodec() {}
+
+    /**
+     * Indica si el valor está en formato compacto; las entradas JSON del formato anterior
+     * empiezan con '{'
+     */
+    static boolean esCompacto(byte[] valor) {
+        return valor.length > 0 && valor[0] == VERSION;
+    }
+
+    /**
+     * Decodifica el historial, devolviendo las entradas de la más reciente a la más antigua
+     * (el orden del formato anterior). Lanza IllegalArgumentException si el valor no es válido.
+     */
+    static List<TrackingService.HistorialEntry> decodificar(byte[] valor) {
+        if (!esCompacto(valor)) {
+            throw new IllegalArgumentException("Versión de historial no soportada");
+        }
+
+        List<TrackingService.HistorialEntry> entradas = new ArrayList<>();
+        long segundos = 0;
+        int pos = 1;
+        while (pos < valor.length) {
+            int estados = valor[pos++] & 0xFF;
+
+            long zigzag = 0;
+            int desplazamiento = 0;
+            int b;
+            do {
+                if (pos >= valor.length || desplazamiento > 63) {
+                    throw new IllegalArgumentException("Historial truncado");
+                }
+                b = valor[pos++] & 0xFF;
+                zigzag |= (long) (b & 0x7F) << desplazamiento;
+                desplazamiento += 7;
+            } while (b >= 0x80);
+            segundos += (zigzag >>> 1) ^ -(zigzag & 1);
+
+            entradas.add(new TrackingService.HistorialEntry(
+                formatear(segundos), estado((estados >>> 4) - 1), estado(estados & 0x0F)));
+        }
+
+        // Se almacenan de la más antigua a la más reciente
+        List<TrackingService.HistorialEntry> recientesPrimero = new ArrayList<>(entradas.size());
+        for (int i = entradas.size() - 1; i >= 0; i--) {
+            recientesPrimero.add(entradas.get(i));
+        }
+        return recientesPrimero;
+    }
+
+    /**
+     * Codifica entradas ordenadas de la más reciente a la más antigua.
+     * Lanza IllegalArgumentException si alguna tiene un estado o timestamp no válido.
+     */
+    static byte[] codificar(List<TrackingService.HistorialEntry> recientesPrimero) {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream(1 + recientesPrimero.size() * 6);
+        salida.write(VERSION);
+
+        long previo = 0;
+        for (int i = recientesPrimero.size() - 1; i >= 0; i--) {
+            TrackingService.HistorialEntry entrada = recientesPrimero.get(i);
+            int anterior = entrada.getEstadoAnterior() != null ? ordinal(entrada.getEstadoAnterior()) : -1;
+            salida.write((anterior + 1) << 4 | ordinal(entrada.getEstadoNuevo()));
+
+            if (entrada.getTimestamp() == null) {
+                throw new IllegalArgumentException("Entrada de historial sin timestamp");
+            }
+            long segundos = segundos(LocalDateTime.parse(entrada.getTimestamp()));
+            long delta = segundos - previo;
+            long zigzag = (delta << 1) ^ (delta >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                salida.write((int) (zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            salida.write((int) zigzag);
+            previo = segundos;
+        }
+        return salida.toByteArray();
+    }
+
+    /**
+     * Segundos de una fecha local tomada como UTC (valor que recibe el script de transición)
+     */
+    static long segundos(LocalDateTime fecha) {
+        return fecha.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static String formatear(long segundos) {
+        return LocalDateTime.ofEpochSecond(segundos, 0, ZoneOffset.UTC).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+    }
+
+    private static String estado(int ordinal) {
+        if (ordinal < 0) {
+            return null;
+        }
+        if (ordinal >= TrackingService.ESTADOS.size()) {
+            throw new IllegalArgumentException("Ordinal de estado desconocido: " + ordinal);
+        }
+        return TrackingService.ESTADOS.get(ordinal);
+    }
+
+    private static int ordinal(String estado) {
+        int ordinal = estado != null ? TrackingService.ESTADOS.indexOf(estado) : -1;
+        if (ordinal < 0 || ordinal >= MAX_ESTADOS) {
+            throw new IllegalArgumentException("Estado no codificable: " + estado);
+        }
+        return ordinal;
+    }
+}
@@ -0,0 +1,374 @@
+package com.proyecto.trackingservice.service;
+
+import com.proyecto.common.http.ServiceTokenProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands.XAddOptions;
+import org.springframework.data.redis.connection.RedisStreamCommands.XClaimOptions;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Despachador del outbox de notificaciones hacia pedido-service.
+ *
+ * Cada transición se agrega al stream {@code outbox:pedido-sync} dentro del mismo
+ * script Lua que actualiza el tracking. Este componente lee el stream con un
+ * consumer group, conserva solo el último estado de cada pedido del lote y lo
+ * entrega en una sola llamada al endpoint de sincronización por lotes. Las
+ * entradas solo se confirman (XACK + XDEL) cuando pedido-service acepta el lote;
+ * si la entrega falla quedan pendientes y se reintentan con backoff exponencial.
+ *
+ * Un registro no puede bloquear al resto: los inválidos y los que superan
+ * {@code tracking.outbox.max-entregas} (contador de entregas de XPENDING) se mueven al
+ * stream {@link #CLAVE_FALLIDOS}; ante un 4xx, o un 5xx al reintentar, el lote se divide
+ * a la mitad hasta aislar el registro que falla. Las entradas pendientes de consumidores
+ * inactivos (p. ej. un contenedor reemplazado, que vuelve con otro nombre) se reclaman
+ * con XCLAIM y esos consumidores se eliminan del grupo.
+ */
+@Service
+public class PedidoSyncDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(PedidoSyncDispatcher.class);
+
+    public static final String CLAVE_OUTBOX = "outbox:pedido-sync";
+    public static final String CLAVE_FALLIDOS = CLAVE_OUTBOX + ":fallidos";
+    private static final String GRUPO = "pedido-sync";
+
+    private final StringRedisTemplate redisTemplate;
+    private final ServiceTokenProvider tokenProvider;
+    private final RestTemplate restTemplate;
+
+    @Value("${pedido.service.base.url:http://pedido-service:8083}")
+    private String pedidoServiceBaseUrl;
+
+    @Value("${tracking.outbox.consumidor:${HOSTNAME:tracking-service}}")
+    private String nombreConsumidor;
+
+    @Value("${tracking.outbox.lote:500}")
+    private int tamanoLote;
+
+    @Value("${tracking.outbox.max-lotes-por-ciclo:20}")
+    private int maxLotesPorCiclo;
+
+    @Value("${tracking.outbox.backoff-maximo-ms:60000}")
+    private long backoffMaximoMs;
+
+    @Value("${tracking.outbox.max-entregas:10}")
+    private long maxEntregas;
+
+    // Tiempo sin actividad tras el cual se reclaman las entradas de otro consumidor
+    @Value("${tracking.outbox.reclamo-inactividad-ms:120000}")
+    private long reclamoInactividadMs;
+
+    @Value("${tracking.outbox.max-fallidos:10000}")
+    private long maxFallidos;
+
+    private volatile long proximoIntento = 0;
+    private volatile int fallosConsecutivos = 0;
+    private final AtomicLong entregados = new AtomicLong(0);
+    private final AtomicLong lotesFallidos = new AtomicLong(0);
+    private final AtomicLong descartados = new AtomicLong(0);
+    private final AtomicLong reclamados = new AtomicLong(0);
+
+    @Autowired
+    public PedidoSyncDispatcher(StringRedisTemplate redisTemplate, ServiceTokenProvider tokenProvider,
+                                RestTemplate restTemplate) {
+        this.redisTemplate = redisTemplate;
+        this.tokenProvider = tokenProvider;
+        this.restTemplate = restTemplate;
+    }
+
+    /**
+     * Crea el consumer group del outbox (y el stream si no existe)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void inicializarGrupo() {
+        try {
+            redisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands().xGroupCreate(
+                CLAVE_OUTBOX.getBytes(StandardCharsets.UTF_8), GRUPO, ReadOffset.from("0"), true));
+            logger.info("📬 Consumer group '{}' creado para el outbox {}", GRUPO, CLAVE_OUTBOX);
+        } catch (Exception e) {
+            // BUSYGROUP: el grupo ya existe
+            logger.debug("Consumer group '{}' ya existente - {}", GRUPO, e.getMessage());
+        }
+    }
+
+    /**
+     * Drena el outbox por lotes hacia pedido-service
+     */
+    @Scheduled(fixedDelayString = "${tracking.outbox.intervalo-ms:1000}")
+    public void despachar() {
+        if (System.currentTimeMillis() < proximoIntento) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < maxLotesPorCiclo; i++) {
+                // Primero las entradas pendientes de este consumidor (entregas fallidas o reclamadas)
+                List<MapRecord<String, Object, Object>> registros = leer(ReadOffset.from("0"));
+                boolean reintento = !registros.isEmpty();
+                if (!reintento) {
+                    registros = leer(ReadOffset.lastConsumed());
+                }
+                if (registros.isEmpty()) {
+                    return;
+                }
+
+                entregar(registros, reintento);
+
+                if (registros.size() < tamanoLote) {
+                    return;
+                }
+            }
+        } catch (RestClientException e) {
+            registrarFallo(e);
+        } catch (Exception e) {
+            logger.error("❌ Error inesperado al despachar outbox hacia pedido-service - {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Estadísticas del outbox
+     */
+    public Map<String, Object> obtenerEstadisticas() {
+        Map<String, Object> stats = new HashMap<>();
+        Long pendientes = redisTemplate.opsForStream().size(CLAVE_OUTBOX);
+        stats.put("pendientes", pendientes != null ? pendientes : 0);
+        stats.put("entregados", entregados.get());
+        stats.put("lotesFallidos", lotesFallidos.get());
+        stats.put("fallosConsecutivos", fallosConsecutivos);
+        stats.put("descartados", descartados.get());
+        stats.put("reclamados", reclamados.get());
+        Long fallidos = redisTemplate.opsForStream().size(CLAVE_FALLIDOS);
+        stats.put("fallidos", fallidos != null ? fallidos : 0);
+        return stats;
+    }
+
+    /**
+     * Reclama las entradas pendientes de consumidores inactivos y elimina del grupo a los
+     * consumidores inactivos sin pendientes. Cada reinicio de contenedor usa un nombre de
+     * consumidor nuevo; sin esto sus entradas pendientes no se volverían a leer.
+     */
+    @Scheduled(fixedDelayString = "${tracking.outbox.reclamo-intervalo-ms:30000}")
+    public void reclamarPendientes() {
+        try {
+            PendingMessages pendientes = redisTemplate.opsForStream().pending(
+                CLAVE_OUTBOX, GRUPO, Range.unbounded(), tamanoLote);
+            List<RecordId> inactivos = new ArrayList<>();
+            for (PendingMessage pendiente : pendientes) {
+                if (!nombreConsumidor.equals(pendiente.getConsumerName()) &&
+                    pendiente.getElapsedTimeSinceLastDelivery().toMillis() >= reclamoInactividadMs) {
+                    inactivos.add(pendiente.getId());
+                }
+            }
+            if (!inactivos.isEmpty()) {
+                // XCLAIM vuelve a comprobar la inactividad: no reclama entradas que otro consumidor acaba de leer
+                List<RecordId> reclamadas = redisTemplate.execute((RedisCallback<List<RecordId>>) connection ->
+                    connection.streamCommands().xClaimJustId(bytes(CLAVE_OUTBOX), GRUPO, nombreConsumidor,
+                        XClaimOptions.minIdle(Duration.ofMillis(reclamoInactividadMs))
+                            .ids(inactivos.toArray(new RecordId[0]))));
+                int cantidad = reclamadas != null ? reclamadas.size() : 0;
+                reclamados.addAndGet(cantidad);
+                logger.info("📬 {} entradas del outbox reclamadas de consumidores inactivos", cantidad);
+            }
+
+            for (StreamInfo.XInfoConsumer consumidor : redisTemplate.opsForStream().consumers(CLAVE_OUTBOX, GRUPO)) {
+                if (!nombreConsumidor.equals(consumidor.consumerName()) && consumidor.pendingCount() == 0 &&
+                    consumidor.idleTimeMs() >= reclamoInactividadMs) {
+                    redisTemplate.opsForStream().deleteConsumer(CLAVE_OUTBOX, Consumer.from(GRUPO, consumidor.consumerName()));
+                    logger.info("🧹 Consumidor inactivo '{}' eliminado del grupo {}", consumidor.consumerName(), GRUPO);
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("⚠️ Error al reclamar entradas pendientes del outbox - {}", e.getMessage());
+        }
+    }
+
+    private List<MapRecord<String, Object, Object>> leer(ReadOffset offset) {
+        List<MapRecord<String, Object, Object>> registros = redisTemplate.opsForStream().read(
+            Consumer.from(GRUPO, nombreConsumidor),
+            StreamReadOptions.empty().count(tamanoLote),
+            StreamOffset.create(CLAVE_OUTBOX, offset));
+        return registros != null ? registros : Collections.emptyList();
+    }
+
+    /**
+     * Descarta los registros inválidos o que agotaron sus entregas y envía el resto.
+     * En un reintento el contador de entregas de cada registro se consulta con XPENDING.
+     */
+    private void entregar(List<MapRecord<String, Object, Object>> registros, boolean reintento) {
+        Map<RecordId, Long> entregas = reintento ? contarEntregas(registros) : Map.of();
+        List<MapRecord<String, Object, Object>> validos = new ArrayList<>(registros.size());
+        for (MapRecord<String, Object, Object> registro : registros) {
+            Map<Object, Object> valores = registro.getValue();
+            long entregasRegistro = entregas.getOrDefault(registro.getId(), 1L);
+            if (!String.valueOf(valores.get("pedidoId")).matches("\\d{1,18}") || valores.get("estado") == null) {
+                descartar(List.of(registro), "Registro inválido");
+            } else if (entregasRegistro > maxEntregas) {
+                descartar(List.of(registro), "Máximo de entregas alcanzado (" + maxEntregas + ")");
+            } else {
+                validos.add(registro);
+            }
+        }
+        if (!validos.isEmpty()) {
+            enviar(validos, reintento);
+        }
+        fallosConsecutivos = 0;
+    }
+
+    /**
+     * Envía un lote. Un 4xx no se resuelve reintentando, y un 5xx repetido puede deberse a un
+     * solo registro: en ambos casos el lote se divide a la mitad hasta aislar el registro, que
+     * con 4xx se descarta y con 5xx queda pendiente hasta agotar sus entregas.
+     */
+    private void enviar(List<MapRecord<String, Object, Object>> registros, boolean reintento) {
+        try {
+            enviarLote(registros);
+        } catch (HttpClientErrorException | HttpServerErrorException e) {
+            boolean errorCliente = e instanceof HttpClientErrorException;
+            if (!errorCliente && !reintento) {
+                throw e;
+            }
+            if (registros.size() == 1) {
+                if (errorCliente) {
+                    descartar(registros, "HTTP " + e.getStatusCode().value() + " de pedido-service");
+                    return;
+                }
+                throw e;
+            }
+            logger.warn("⚠️ pedido-service rechazó un lote de {} transiciones (HTTP {}), se divide para aislar el registro",
+                        registros.size(), e.getStatusCode().value());
+            int mitad = registros.size() / 2;
+            try {
+                enviar(registros.subList(0, mitad), reintento);
+            } catch (HttpServerErrorException falloPrimeraMitad) {
+                // La segunda mitad se intenta una vez sin dividir: si pedido-service falla con
+                // todo, el número de peticiones sigue siendo logarítmico
+                enviar(registros.subList(mitad, registros.size()), false);
+                throw falloPrimeraMitad;
+            }
+            enviar(registros.subList(mitad, registros.size()), reintento);
+        }
+    }
+
+    /**
+     * Entrega un lote coalesciendo por pedido: solo importa el último estado
+     */
+    private void enviarLote(List<MapRecord<String, Object, Object>> registros) {
+        Map<String, Map<String, String>> ultimos = new LinkedHashMap<>();
+        RecordId[] ids = new RecordId[registros.size()];
+
+        for (int i = 0; i < registros.size(); i++) {
+            MapRecord<String, Object, Object> registro = registros.get(i);
+            ids[i] = registro.getId();
+            Map<Object, Object> valores = registro.getValue();
+            String pedidoId = String.valueOf(valores.get("pedidoId"));
+            ultimos.put(pedidoId, Map.of(
+                "pedidoId", pedidoId,
+                "estado", String.valueOf(valores.get("estado")),
+                "fechaActualizacion", String.valueOf(valores.get("fecha"))
+            ));
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBearerAuth(tokenProvider.obtenerToken());
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        HttpEntity<Collection<Map<String, String>>> entity = new HttpEntity<>(ultimos.values(), headers);
+
+        String url = pedidoServiceBaseUrl + "/api/pedidos/sync-from-tracking/batch";
+        restTemplate.exchange(url, HttpMethod.PUT, entity, String.class);
+
+        redisTemplate.opsForStream().acknowledge(CLAVE_OUTBOX, GRUPO, ids);
+        redisTemplate.opsForStream().delete(CLAVE_OUTBOX, ids);
+
+        entregados.addAndGet(ultimos.size());
+        logger.info("🔄 Lote de {} transiciones ({} pedidos) sincronizado con pedido-service",
+                   registros.size(), ultimos.size());
+    }
+
+    /**
+     * Contador de entregas (XPENDING) de registros leídos de las pendientes de este consumidor
+     */
+    private Map<RecordId, Long> contarEntregas(List<MapRecord<String, Object, Object>> registros) {
+        PendingMessages pendientes = redisTemplate.opsForStream().pending(CLAVE_OUTBOX,
+            Consumer.from(GRUPO, nombreConsumidor),
+            Range.closed(registros.get(0).getId().getValue(), registros.get(registros.size() - 1).getId().getValue()),
+            registros.size());
+        Map<RecordId, Long> entregas = new HashMap<>();
+        for (PendingMessage pendiente : pendientes) {
+            entregas.put(pendiente.getId(), pendiente.getTotalDeliveryCount());
+        }
+        return entregas;
+    }
+
+    /**
+     * Mueve registros al stream de fallidos (acotado a tracking.outbox.max-fallidos) y los
+     * confirma en el outbox para que no bloqueen las entregas siguientes
+     */
+    private void descartar(List<MapRecord<String, Object, Object>> registros, String motivo) {
+        RecordId[] ids = new RecordId[registros.size()];
+        for (int i = 0; i < registros.size(); i++) {
+            MapRecord<String, Object, Object> registro = registros.get(i);
+            ids[i] = registro.getId();
+            Map<String, String> campos = new LinkedHashMap<>();
+            registro.getValue().forEach((campo, valor) -> campos.put(String.valueOf(campo), String.valueOf(valor)));
+            campos.put("idOriginal", registro.getId().getValue());
+            campos.put("motivo", motivo);
+            redisTemplate.execute((RedisCallback<RecordId>) connection -> connection.streamCommands().xAdd(
+                StreamRecords.newRecord().in(bytes(CLAVE_FALLIDOS)).ofMap(aBytes(campos)),
+                XAddOptions.maxlen(maxFallidos).approximateTrimming(true)));
+            logger.error("❌ Transición del outbox descartada (pedido ID: {}) - {}", campos.get("pedidoId"), motivo);
+        }
+        redisTemplate.opsForStream().acknowledge(CLAVE_OUTBOX, GRUPO, ids);
+        redisTemplate.opsForStream().delete(CLAVE_OUTBOX, ids);
+        descartados.addAndGet(registros.size());
+    }
+
+    private static Map<byte[], byte[]> aBytes(Map<String, String> campos) {
+        Map<byte[], byte[]> resultado = new LinkedHashMap<>();
+        campos.forEach((campo, valor) -> resultado.put(bytes(campo), bytes(valor)));
+        return resultado;
+    }
+
+    private static byte[] bytes(String valor) {
+        return valor.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void registrarFallo(RestClientException e) {
+        lotesFallidos.incrementAndGet();
+        int fallos = ++fallosConsecutivos;
+        long espera = Math.min(backoffMaximoMs, 1000L << Math.min(fallos, 16));
+        proximoIntento = System.currentTimeMillis() + espera;
+        logger.warn("⚠️ Error al notificar lote a pedido-service - {}. Reintento en {} ms", e.getMessage(), espera);
+    }
+}
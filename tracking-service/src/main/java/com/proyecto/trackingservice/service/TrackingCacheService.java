@@ -0,0 +1,117 @@
+package com.proyecto.trackingservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.function.Function;
+
+/**
+ * Caché local (near-cache) del estado de tracking ya deserializado.
+ *
+ * Acotada por número de entradas (desalojo W-TinyLFU de Caffeine) y por TTL. Cada
+ * transición publicada en {@link TrackingStreamService#CANAL_EVENTOS} invalida la entrada
+ * en todas las instancias; la instancia que escribe la invalida además de inmediato. Si la
+ * suscripción pierde mensajes (reconexión con Redis), el TTL acota la obsolescencia.
+ * Métricas: {@code cache.gets}, {@code cache.evictions} y {@code cache.size} con
+ * {@code cache=tracking.estados}, y {@code tracking.cache.retraso.invalidacion} (tiempo entre
+ * la transición y la invalidación recibida, es decir, la ventana de obsolescencia).
+ */
+@Service
+public class TrackingCacheService implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrackingCacheService.class);
+
+    private final Cache<String, TrackingService.TrackingInfo> estados;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Timer retrasoInvalidacion;
+    private final Counter invalidacionesRemotas;
+
+    public TrackingCacheService(MeterRegistry meterRegistry,
+                                @Value("${tracking.cache.max-entradas:100000}") long maxEntradas,
+                                @Value("${tracking.cache.ttl-s:60}") long ttlSegundos) {
+        this.estados = Caffeine.newBuilder()
+            .maximumSize(maxEntradas)
+            .expireAfterWrite(Duration.ofSeconds(ttlSegundos))
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, estados, "tracking.estados");
+        this.retrasoInvalidacion = Timer.builder("tracking.cache.retraso.invalidacion")
+            .description("Tiempo entre una transición y la invalidación de la caché local")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        this.invalidacionesRemotas = Counter.builder("tracking.cache.invalidaciones")
+            .description("Invalidaciones recibidas por pub/sub")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Devuelve el estado en caché o lo carga con la función indicada.
+     * Un resultado null (pedido sin tracking) no se guarda.
+     */
+    public TrackingService.TrackingInfo obtener(String pedidoId,
+                                                Function<String, TrackingService.TrackingInfo> cargar) {
+        return estados.get(pedidoId, cargar);
+    }
+
+    /**
+     * Elimina la entrada de un pedido. Si hay una carga en curso para ese pedido,
+     * espera a que termine y elimina el valor cargado, que puede ser anterior a la transición.
+     */
+    public void invalidar(String pedidoId) {
+        estados.invalidate(pedidoId);
+    }
+
+    /**
+     * Vacía la caché; se usa cuando se descartan invalidaciones por cola llena
+     */
+    public void invalidarTodo() {
+        estados.invalidateAll();
+        logger.warn("⚠️ Cola de invalidaciones llena: se vacía la caché local de tracking");
+    }
+
+    /**
+     * Invalida la entrada del pedido de cada transición publicada por cualquier instancia
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        TrackingService.TrackingInfo info;
+        try {
+            info = objectMapper.readValue(message.getBody(), TrackingService.TrackingInfo.class);
+        } catch (IOException e) {
+            logger.warn("⚠️ Evento de tracking inválido en {} - {}", TrackingStreamService.CANAL_EVENTOS, e.getMessage());
+            return;
+        }
+
+        invalidar(info.getPedidoId());
+        invalidacionesRemotas.increment();
+        registrarRetraso(info.getFechaActualizacion());
+    }
+
+    private void registrarRetraso(String fechaActualizacion) {
+        if (fechaActualizacion == null) {
+            return;
+        }
+        try {
+            Duration retraso = Duration.between(LocalDateTime.parse(fechaActualizacion), LocalDateTime.now());
+            // Con relojes desfasados entre instancias el retraso podría resultar negativo
+            retrasoInvalidacion.record(retraso.isNegative() ? Duration.ZERO : retraso);
+        } catch (DateTimeParseException e) {
+            logger.debug("Fecha de evento no reconocida: {}", fechaActualizacion);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.proyecto.trackingservice.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Contadores de pedidos por estado mantenidos incrementalmente en Redis.
+ *
+ * Cada transición ajusta el hash {@code estadisticas:tracking} (estado → cantidad
+ * más el campo {@code total}) dentro del script de transición, de modo que las
+ * estadísticas se leen con un único HGETALL en lugar de recorrer todas las claves
+ * de tracking.
+ *
+ * La reconstrucción cuenta en {@link #CLAVE_RECONSTRUCCION} y registra en
+ * {@link #CLAVE_CONTADAS} cada clave contada. Mientras existe {@link #CLAVE_RECONSTRUYENDO},
+ * el script de transición aplica su ajuste también a los contadores reconstruidos si la
+ * clave ya se contó, o la cuenta con su estado nuevo si todavía no; así las transiciones
+ * durante el recorrido no se pierden ni se cuentan dos veces al publicar con RENAME. El
+ * conjunto de claves contadas ocupa memoria proporcional a la cantidad de claves mientras
+ * dura la reconstrucción. La diferencia entre los contadores incrementales reemplazados y
+ * los reconstruidos se informa en el estado de la reconstrucción.
+ */
+@Service
+public class TrackingEstadisticasService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrackingEstadisticasService.class);
+
+    static final String CLAVE_ESTADISTICAS = "estadisticas:tracking";
+    static final String CAMPO_TOTAL = "total";
+    static final String CLAVE_RECONSTRUCCION = CLAVE_ESTADISTICAS + ":reconstruccion";
+    static final String CLAVE_CONTADAS = CLAVE_ESTADISTICAS + ":contadas";
+    static final String CLAVE_RECONSTRUYENDO = CLAVE_ESTADISTICAS + ":reconstruyendo";
+
+    // Se renueva en cada lote; si la instancia cae a mitad de reconstrucción la marca expira
+    private static final Duration VIGENCIA_MARCA = Duration.ofMinutes(10);
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisScript<List<Long>> conteoEstadisticasScript;
+
+    @Value("${tracking.estadisticas.reconstruccion.lote:1000}")
+    private int tamanoLote;
+
+    @Value("${tracking.almacenamiento.buckets.habilitado:false}")
+    private boolean almacenamientoBuckets;
+
+    private final AtomicBoolean reconstruyendo = new AtomicBoolean(false);
+    private volatile Map<String, Object> ultimaReconstruccion = Map.of("estado", "NUNCA_EJECUTADA");
+
+    @Autowired
+    public TrackingEstadisticasService(StringRedisTemplate redisTemplate, RedisScript<List<Long>> conteoEstadisticasScript) {
+        this.redisTemplate = redisTemplate;
+        this.conteoEstadisticasScript = conteoEstadisticasScript;
+    }
+
+    /**
+     * Obtiene la distribución actual de pedidos por estado (lectura O(1))
+     */
+    public Map<String, Object> obtenerEstadisticas() {
+        Map<Object, Object> contadores = redisTemplate.opsForHash().entries(CLAVE_ESTADISTICAS);
+
+        long total = 0;
+        Map<String, Long> estadosCounts = new HashMap<>();
+        for (Map.Entry<Object, Object> entry : contadores.entrySet()) {
+            long valor = Long.parseLong(entry.getValue().toString());
+            if (CAMPO_TOTAL.equals(entry.getKey())) {
+                total = valor;
+            } else if (valor > 0) {
+                estadosCounts.put(entry.getKey().toString(), valor);
+            }
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalPedidosTrackeados", total);
+        stats.put("estadosDistribucion", estadosCounts);
+        return stats;
+    }
+
+    /**
+     * Reconstruye los contadores al arrancar si todavía no existen en Redis
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void inicializarContadores() {
+        try {
+            if (Boolean.FALSE.equals(redisTemplate.hasKey(CLAVE_ESTADISTICAS))) {
+                logger.info("📊 Contadores de estadísticas inexistentes, se inicia reconstrucción");
+                reconstruirContadores();
+            }
+        } catch (Exception e) {
+            logger.warn("⚠️ No se pudieron inicializar los contadores de estadísticas - {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Recalcula los contadores recorriendo las claves de tracking (o los buckets) con SCAN
+     * por lotes. El resultado se escribe en una clave temporal y se publica con RENAME.
+     */
+    @Async
+    public void reconstruirContadores() {
+        if (!reconstruyendo.compareAndSet(false, true)) {
+            logger.warn("⚠️ Ya existe una reconstrucción de estadísticas en curso");
+            return;
+        }
+        // La marca en Redis impide reconstrucciones simultáneas desde otras instancias
+        if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(CLAVE_RECONSTRUYENDO, "1", VIGENCIA_MARCA))) {
+            logger.warn("⚠️ Otra instancia está reconstruyendo las estadísticas");
+            reconstruyendo.set(false);
+            return;
+        }
+
+        String fechaInicio = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+        ultimaReconstruccion = Map.of("estado", "EN_PROGRESO", "fechaInicio", fechaInicio);
+        logger.info("🔄 Reconstrucción de estadísticas iniciada");
+
+        long procesadas = 0;
+        long invalidas = 0;
+        String patron = almacenamientoBuckets ? TrackingService.PREFIJO_BUCKET + "*" : "tracking:*";
+        // Cada bucket contiene hasta tracking.almacenamiento.buckets.tamano pedidos
+        int loteScan = almacenamientoBuckets ? Math.max(1, tamanoLote / 100) : tamanoLote;
+        ScanOptions opciones = ScanOptions.scanOptions().match(patron).count(loteScan).build();
+
+        try (Cursor<String> cursor = redisTemplate.scan(opciones)) {
+            redisTemplate.delete(List.of(CLAVE_RECONSTRUCCION, CLAVE_CONTADAS));
+            // El hash debe existir al publicar aunque no haya ningún pedido; HSETNX porque
+            // una transición concurrente ya puede haber contado su clave
+            redisTemplate.opsForHash().putIfAbsent(CLAVE_RECONSTRUCCION, CAMPO_TOTAL, "0");
+
+            List<String> lote = new ArrayList<>(loteScan);
+            while (cursor.hasNext()) {
+                lote.add(cursor.next());
+                if (lote.size() >= loteScan) {
+                    long[] resultado = contarLote(lote);
+                    procesadas += resultado[0];
+                    invalidas += resultado[1];
+                    lote.clear();
+                }
+            }
+            if (!lote.isEmpty()) {
+                long[] resultado = contarLote(lote);
+                procesadas += resultado[0];
+                invalidas += resultado[1];
+            }
+            if (invalidas > 0) {
+                logger.warn("⚠️ {} valores de tracking sin estado válido omitidos en la reconstrucción", invalidas);
+            }
+
+            Map<String, Long> diferencias = publicarContadores();
+
+            Map<String, Object> resultado = new HashMap<>();
+            resultado.put("estado", "COMPLETADA");
+            resultado.put("fechaInicio", fechaInicio);
+            resultado.put("fechaFin", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+            resultado.put("clavesProcesadas", procesadas);
+            resultado.put("valoresInvalidos", invalidas);
+            // Corrección aplicada a los contadores incrementales (reconstruido - anterior)
+            resultado.put("diferencias", diferencias);
+            ultimaReconstruccion = resultado;
+            if (diferencias.isEmpty()) {
+                logger.info("✅ Reconstrucción de estadísticas completada - {} claves procesadas", procesadas);
+            } else {
+                logger.warn("⚠️ Reconstrucción de estadísticas completada - {} claves procesadas, contadores corregidos: {}",
+                            procesadas, diferencias);
+            }
+
+        } catch (Exception e) {
+            redisTemplate.delete(List.of(CLAVE_RECONSTRUYENDO, CLAVE_RECONSTRUCCION, CLAVE_CONTADAS));
+            ultimaReconstruccion = Map.of(
+                "estado", "FALLIDA",
+                "fechaInicio", fechaInicio,
+                "error", String.valueOf(e.getMessage())
+            );
+            logger.error("❌ Error en reconstrucción de estadísticas - {}", e.getMessage());
+        } finally {
+            reconstruyendo.set(false);
+        }
+    }
+
+    /**
+     * Estado de la última reconstrucción ejecutada
+     */
+    public Map<String, Object> obtenerEstadoReconstruccion() {
+        Map<String, Object> estado = new HashMap<>(ultimaReconstruccion);
+        estado.put("enCurso", reconstruyendo.get());
+        return estado;
+    }
+
+    /**
+     * Cuenta un lote de claves (o buckets) en Redis, omitiendo las ya contadas por una
+     * transición. Devuelve los pedidos contados y los valores sin estado válido.
+     */
+    private long[] contarLote(List<String> claves) {
+        List<String> keys = new ArrayList<>(claves.size() + 2);
+        keys.add(CLAVE_RECONSTRUCCION);
+        keys.add(CLAVE_CONTADAS);
+        keys.addAll(claves);
+        List<String> argumentos = new ArrayList<>(TrackingService.ESTADOS.size() + 1);
+        argumentos.add(almacenamientoBuckets ? "1" : "0");
+        argumentos.addAll(TrackingService.ESTADOS);
+
+        List<Long> resultado = redisTemplate.execute(conteoEstadisticasScript, keys, argumentos.toArray());
+        redisTemplate.expire(CLAVE_RECONSTRUYENDO, VIGENCIA_MARCA);
+        return resultado != null ? new long[] {resultado.get(0), resultado.get(1)} : new long[2];
+    }
+
+    /**
+     * Reemplaza atómicamente el hash de contadores con los recalculados y termina la
+     * reconstrucción. Devuelve la diferencia por campo respecto de los contadores reemplazados.
+     */
+    private Map<String, Long> publicarContadores() {
+        List<Object> resultados = redisTemplate.execute(new SessionCallback<List<Object>>() {
+            @Override
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            public List<Object> execute(RedisOperations operaciones) throws DataAccessException {
+                operaciones.multi();
+                operaciones.opsForHash().entries(CLAVE_ESTADISTICAS);
+                operaciones.rename(CLAVE_RECONSTRUCCION, CLAVE_ESTADISTICAS);
+                operaciones.delete(List.of(CLAVE_CONTADAS, CLAVE_RECONSTRUYENDO));
+                operaciones.opsForHash().entries(CLAVE_ESTADISTICAS);
+                return operaciones.exec();
+            }
+        });
+
+        Map<?, ?> anteriores = (Map<?, ?>) resultados.get(0);
+        Map<?, ?> reconstruidos = (Map<?, ?>) resultados.get(resultados.size() - 1);
+        Set<Object> campos = new HashSet<>(anteriores.keySet());
+        campos.addAll(reconstruidos.keySet());
+        Map<String, Long> diferencias = new TreeMap<>();
+        for (Object campo : campos) {
+            long diferencia = valor(reconstruidos.get(campo)) - valor(anteriores.get(campo));
+            if (diferencia != 0) {
+                diferencias.put(campo.toString(), diferencia);
+            }
+        }
+        return diferencias;
+    }
+
+    private static long valor(Object contador) {
+        return contador != null ? Long.parseLong(contador.toString()) : 0;
+    }
+}
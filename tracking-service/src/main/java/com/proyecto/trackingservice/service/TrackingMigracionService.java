@@ -0,0 +1,266 @@
+package com.proyecto.trackingservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Migración en línea de los formatos anteriores de almacenamiento:
+ * las claves {@code tracking:{pedidoId}} en JSON (string) pasan a hash (estado y
+ * fechaActualizacion en epoch ms), y los historiales {@code historial:{pedidoId}} en lista
+ * de JSON pasan al formato compacto de {@link HistorialCodec}.
+ *
+ * Recorre con SCAN por lotes solo las claves del tipo anterior, las lee en un round trip y
+ * las convierte con un script que reemplaza cada clave solo si no cambió desde la lectura,
+ * por lo que puede ejecutarse con el servicio en operación. Mientras queden claves sin
+ * migrar, las lecturas entienden ambos formatos; cada transición convierte la clave de
+ * tracking que modifica, y agrega al historial en el formato que este tenga.
+ * La fase de claves de tracking no aplica al almacenamiento por buckets.
+ */
+@Service
+public class TrackingMigracionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrackingMigracionService.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisScript<Long> migracionTrackingScript;
+    private final RedisScript<Long> migracionHistorialScript;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${tracking.migracion.lote:500}")
+    private int tamanoLote;
+
+    // Pausa entre lotes para acotar la carga sobre Redis durante la migración
+    @Value("${tracking.migracion.pausa-ms:10}")
+    private long pausaMs;
+
+    @Value("${tracking.almacenamiento.buckets.habilitado:false}")
+    private boolean almacenamientoBuckets;
+
+    private final AtomicBoolean migrando = new AtomicBoolean(false);
+    private final AtomicLong revisadas = new AtomicLong();
+    private final AtomicLong convertidas = new AtomicLong();
+    private final AtomicLong invalidas = new AtomicLong();
+    private final AtomicLong historialesRevisados = new AtomicLong();
+    private final AtomicLong historialesConvertidos = new AtomicLong();
+    private final AtomicLong historialesInvalidos = new AtomicLong();
+    private volatile Map<String, Object> ultimaMigracion = Map.of("estado", "NUNCA_EJECUTADA");
+
+    public TrackingMigracionService(StringRedisTemplate redisTemplate, RedisScript<Long> migracionTrackingScript,
+                                    RedisScript<Long> migracionHistorialScript) {
+        this.redisTemplate = redisTemplate;
+        this.migracionTrackingScript = migracionTrackingScript;
+        this.migracionHistorialScript = migracionHistorialScript;
+    }
+
+    /**
+     * Convierte todas las claves de tracking y los historiales que siguen en el formato anterior
+     */
+    @Async
+    public void migrar() {
+        if (!migrando.compareAndSet(false, true)) {
+            logger.warn("⚠️ Ya existe una migración de tracking en curso");
+            return;
+        }
+
+        String fechaInicio = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+        revisadas.set(0);
+        convertidas.set(0);
+        invalidas.set(0);
+        historialesRevisados.set(0);
+        historialesConvertidos.set(0);
+        historialesInvalidos.set(0);
+        ultimaMigracion = Map.of("estado", "EN_PROGRESO", "fechaInicio", fechaInicio);
+        logger.info("🔄 Migración de almacenamiento de tracking iniciada");
+
+        try {
+            if (!almacenamientoBuckets) {
+                recorrer("tracking:*", DataType.STRING, this::migrarLote);
+            }
+            recorrer("historial:*", DataType.LIST, this::migrarHistoriales);
+
+            ultimaMigracion = resumen("COMPLETADA", fechaInicio, null);
+            logger.info("✅ Migración de tracking completada - {} claves revisadas, {} convertidas, {} inválidas; " +
+                        "{} historiales revisados, {} convertidos, {} inválidos",
+                        revisadas.get(), convertidas.get(), invalidas.get(),
+                        historialesRevisados.get(), historialesConvertidos.get(), historialesInvalidos.get());
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ultimaMigracion = resumen("INTERRUMPIDA", fechaInicio, null);
+        } catch (Exception e) {
+            ultimaMigracion = resumen("FALLIDA", fechaInicio, String.valueOf(e.getMessage()));
+            logger.error("❌ Error en migración de tracking - {}", e.getMessage());
+        } finally {
+            migrando.set(false);
+        }
+    }
+
+    /**
+     * Estado de la migración en curso o de la última ejecutada
+     */
+    public Map<String, Object> obtenerEstadoMigracion() {
+        Map<String, Object> estado = new HashMap<>(ultimaMigracion);
+        estado.put("enCurso", migrando.get());
+        estado.put("clavesRevisadas", revisadas.get());
+        estado.put("clavesConvertidas", convertidas.get());
+        estado.put("clavesInvalidas", invalidas.get());
+        estado.put("historialesRevisados", historialesRevisados.get());
+        estado.put("historialesConvertidos", historialesConvertidos.get());
+        estado.put("historialesInvalidos", historialesInvalidos.get());
+        return estado;
+    }
+
+    /**
+     * Recorre con SCAN las claves del patrón y tipo indicados y las procesa por lotes,
+     * con una pausa entre lotes
+     */
+    private void recorrer(String patron, DataType tipo, Consumer<List<String>> procesar)
+            throws InterruptedException {
+        ScanOptions opciones = ScanOptions.scanOptions()
+            .match(patron)
+            .type(tipo)
+            .count(tamanoLote)
+            .build();
+
+        try (Cursor<String> cursor = redisTemplate.scan(opciones)) {
+            List<String> lote = new ArrayList<>(tamanoLote);
+            while (cursor.hasNext()) {
+                lote.add(cursor.next());
+                if (lote.size() >= tamanoLote) {
+                    procesar.accept(lote);
+                    lote.clear();
+                    if (pausaMs > 0) {
+                        Thread.sleep(pausaMs);
+                    }
+                }
+            }
+            if (!lote.isEmpty()) {
+                procesar.accept(lote);
+            }
+        }
+    }
+
+    /**
+     * Lee el lote con un MGET y lo convierte con una sola ejecución del script.
+     * Las claves que dejaron de ser string (transición concurrente) llegan como null y se omiten.
+     */
+    private void migrarLote(List<String> claves) {
+        List<String> valores = redisTemplate.opsForValue().multiGet(claves);
+        if (valores == null) {
+            return;
+        }
+        revisadas.addAndGet(claves.size());
+
+        List<String> clavesConvertir = new ArrayList<>(claves.size());
+        List<String> argumentos = new ArrayList<>(claves.size() * 3);
+        for (int i = 0; i < claves.size(); i++) {
+            String json = valores.get(i);
+            if (json == null) {
+                continue;
+            }
+            try {
+                TrackingService.TrackingInfo info = objectMapper.readValue(json, TrackingService.TrackingInfo.class);
+                if (info.getEstado() != null && info.getFechaActualizacion() != null) {
+                    long epochMs = TrackingService.aEpochMs(LocalDateTime.parse(info.getFechaActualizacion()));
+                    clavesConvertir.add(claves.get(i));
+                    argumentos.add(json);
+                    argumentos.add(info.getEstado());
+                    argumentos.add(String.valueOf(epochMs));
+                    continue;
+                }
+            } catch (JsonProcessingException | DateTimeParseException e) {
+                // Se trata igual que un JSON incompleto
+            }
+            // Se conserva sin cambios; las lecturas compatibles siguen entendiéndola como hasta ahora
+            invalidas.incrementAndGet();
+            logger.warn("⚠️ Clave de tracking con JSON inválido, no se migra: {}", claves.get(i));
+        }
+
+        if (!clavesConvertir.isEmpty()) {
+            Long resultado = redisTemplate.execute(migracionTrackingScript, clavesConvertir, argumentos.toArray());
+            convertidas.addAndGet(resultado != null ? resultado : 0);
+        }
+    }
+
+    /**
+     * Lee las listas del lote en un pipeline, las codifica en el formato compacto y las
+     * reemplaza con una sola ejecución del script. Los argumentos viajan como bytes porque
+     * el valor compacto es binario.
+     */
+    private void migrarHistoriales(List<String> claves) {
+        List<Object> listas = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String clave : claves) {
+                connection.listCommands().lRange(bytes(clave), 0, -1);
+            }
+            return null;
+        });
+        historialesRevisados.addAndGet(claves.size());
+
+        List<String> clavesConvertir = new ArrayList<>(claves.size());
+        List<byte[]> argumentos = new ArrayList<>(claves.size() * 3);
+        for (int i = 0; i < claves.size(); i++) {
+            List<?> entradas = (List<?>) listas.get(i);
+            if (entradas == null || entradas.isEmpty()) {
+                continue;
+            }
+            try {
+                List<TrackingService.HistorialEntry> historial = new ArrayList<>(entradas.size());
+                for (Object entrada : entradas) {
+                    historial.add(objectMapper.readValue((String) entrada, TrackingService.HistorialEntry.class));
+                }
+                byte[] compacto = HistorialCodec.codificar(historial);
+                clavesConvertir.add(claves.get(i));
+                argumentos.add(bytes(String.valueOf(entradas.size())));
+                argumentos.add(bytes((String) entradas.get(0)));
+                argumentos.add(compacto);
+            } catch (JsonProcessingException | IllegalArgumentException | DateTimeParseException e) {
+                // Se conserva la lista; las lecturas compatibles la siguen entendiendo
+                historialesInvalidos.incrementAndGet();
+                logger.warn("⚠️ Historial con entradas inválidas, no se migra: {}", claves.get(i));
+            }
+        }
+
+        if (!clavesConvertir.isEmpty()) {
+            Long resultado = redisTemplate.execute(migracionHistorialScript, RedisSerializer.byteArray(),
+                new GenericToStringSerializer<>(Long.class), clavesConvertir, argumentos.toArray());
+            historialesConvertidos.addAndGet(resultado != null ? resultado : 0);
+        }
+    }
+
+    private static byte[] bytes(String valor) {
+        return valor.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Map<String, Object> resumen(String estado, String fechaInicio, String error) {
+        Map<String, Object> resumen = new HashMap<>();
+        resumen.put("estado", estado);
+        resumen.put("fechaInicio", fechaInicio);
+        resumen.put("fechaFin", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        if (error != null) {
+            resumen.put("error", error);
+        }
+        return resumen;
+    }
+}
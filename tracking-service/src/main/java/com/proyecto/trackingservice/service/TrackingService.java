@@ -2,18 +2,26 @@ package com.proyecto.trackingservice.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.client.RestClientException;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.oauth2.jwt.Jwt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.IOException;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 
@@ -24,45 +32,249 @@ public class TrackingService {
     private final StringRedisTemplate redisTemplate;
     private final ObjectMapper objectMapper;
     private final RestTemplate restTemplate;
+    private final TrackingEstadisticasService estadisticasService;
+    private final RedisScript<String> transicionEstadoScript;
+    private final RedisScript<List<String>> lecturaTrackingScript;
+    private final RedisScript<List<byte[]>> lecturaHistorialScript;
+    private final TrackingCacheService cacheService;
     
     @Value("${pedido.service.base.url:http://pedido-service:8083}")
     private String pedidoServiceBaseUrl;
+
+    // Almacenamiento por buckets: los pedidos id / tamaño comparten un hash tracking-bucket:{n}
+    // (pedidoId → "ordinal:epoch ms"). Se fija al desplegar; cambiarlo no migra los datos existentes.
+    @Value("${tracking.almacenamiento.buckets.habilitado:false}")
+    private boolean almacenamientoBuckets;
+
+    @Value("${tracking.almacenamiento.buckets.tamano:1000}")
+    private int tamanoBucket;
+    
+    // Máximo de entradas conservadas en el historial de cada pedido
+    private static final int MAX_HISTORIAL = 50;
+
+    static final String PREFIJO_BUCKET = "tracking-bucket:";
     
-    // Estados válidos para validación (consistentes con frontend y pedido-service)
-    private static final Set<String> ESTADOS_VALIDOS = Set.of(
+    // Estados en orden de ordinal (consistentes con frontend y pedido-service). El ordinal se
+    // persiste en el almacenamiento por buckets: los estados nuevos solo se agregan al final.
+    static final List<String> ESTADOS = List.of(
         "PENDIENTE", "PROCESANDO", "ENVIADO", "ENTREGADO", "CANCELADO"
     );
 
+    // Estados válidos para validación
+    private static final Set<String> ESTADOS_VALIDOS = Set.copyOf(ESTADOS);
+
+    // Los resultados del script de historial son binarios y se leen sin convertir
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final RedisSerializer<List<byte[]>> SERIALIZADOR_BYTES = (RedisSerializer) RedisSerializer.byteArray();
+
     @Autowired
-    public TrackingService(StringRedisTemplate redisTemplate) {
+    public TrackingService(StringRedisTemplate redisTemplate, TrackingEstadisticasService estadisticasService,
+                           RedisScript<String> transicionEstadoScript, RedisScript<List<String>> lecturaTrackingScript,
+                           RedisScript<List<byte[]>> lecturaHistorialScript,
+                           RestTemplate restTemplate, TrackingCacheService cacheService) {
         this.redisTemplate = redisTemplate;
+        this.estadisticasService = estadisticasService;
+        this.transicionEstadoScript = transicionEstadoScript;
+        this.lecturaTrackingScript = lecturaTrackingScript;
+        this.lecturaHistorialScript = lecturaHistorialScript;
+        this.cacheService = cacheService;
         this.objectMapper = new ObjectMapper();
-        this.restTemplate = new RestTemplate();
+        this.restTemplate = restTemplate;
     }
 
     /**
-     * Obtiene el estado actual del pedido
+     * Obtiene el estado actual del pedido, desde la caché local si está presente
+     * (ver {@link TrackingCacheService}). La instancia devuelta es compartida y no debe modificarse.
      */
     public TrackingInfo getEstadoPedido(String pedidoId) {
-        try {
-            String data = redisTemplate.opsForValue().get("tracking:" + pedidoId);
-            if (data == null) {
-                logger.warn("📭 No se encontró tracking para pedido ID: {}", pedidoId);
-                return null;
+        return cacheService.obtener(pedidoId, this::leerEstadoPedido);
+    }
+
+    private TrackingInfo leerEstadoPedido(String pedidoId) {
+        TrackingInfo info = leerEstados(List.of(pedidoId), false).getEncontrados().get(pedidoId);
+        if (info == null) {
+            logger.debug("📭 No se encontró tracking para pedido ID: {}", pedidoId);
+        } else {
+            logger.debug("📋 Estado consultado para pedido ID: {} - Estado: {}", pedidoId, info.getEstado());
+        }
+        return info;
+    }
+
+    /**
+     * Obtiene el estado actual de varios pedidos en un solo round trip.
+     * Los ids repetidos se consultan una sola vez y los que no tienen tracking se informan aparte.
+     */
+    public ConsultaLoteResultado getEstadosPedidos(List<String> pedidoIds) {
+        return getEstadosPedidos(pedidoIds, false);
+    }
+
+    /**
+     * Igual que {@link #getEstadosPedidos(List)}; con soloEstado no se lee la fecha
+     * (queda null), para quien solo compara estados
+     */
+    public ConsultaLoteResultado getEstadosPedidos(List<String> pedidoIds, boolean soloEstado) {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(pedidoIds));
+        if (ids.isEmpty()) {
+            return new ConsultaLoteResultado();
+        }
+        ConsultaLoteResultado resultado = leerEstados(ids, soloEstado);
+        logger.debug("📋 Consulta por lote de {} pedidos - {} con tracking", ids.size(), resultado.getEncontrados().size());
+        return resultado;
+    }
+
+    /**
+     * Lee los hashes tracking:{id} con el script de lectura, que también entiende el
+     * formato JSON anterior mientras queden claves sin migrar
+     * (ver {@link TrackingMigracionService}).
+     */
+    private ConsultaLoteResultado leerEstados(List<String> ids, boolean soloEstado) {
+        if (almacenamientoBuckets) {
+            return leerEstadosBuckets(ids, soloEstado);
+        }
+        List<String> claves = new ArrayList<>(ids.size());
+        for (String pedidoId : ids) {
+            claves.add("tracking:" + pedidoId);
+        }
+
+        List<String> valores = redisTemplate.execute(lecturaTrackingScript, claves, soloEstado ? "1" : "0");
+
+        ConsultaLoteResultado resultado = new ConsultaLoteResultado();
+        for (int i = 0; i < ids.size(); i++) {
+            String estado = valores != null ? valores.get(2 * i) : null;
+            if (estado == null) {
+                resultado.getNoEncontrados().add(ids.get(i));
+                continue;
+            }
+            resultado.getEncontrados().put(ids.get(i),
+                new TrackingInfo(ids.get(i), estado, aFechaIso(valores.get(2 * i + 1))));
+        }
+        return resultado;
+    }
+
+    /**
+     * Lee los pedidos agrupados por bucket: un HMGET por bucket, todos en un solo pipeline.
+     * Los ids no numéricos no pueden tener tracking en este almacenamiento.
+     */
+    private ConsultaLoteResultado leerEstadosBuckets(List<String> ids, boolean soloEstado) {
+        Map<Long, List<String>> porBucket = new LinkedHashMap<>();
+        ConsultaLoteResultado resultado = new ConsultaLoteResultado();
+        for (String pedidoId : ids) {
+            long bucket = numeroBucket(pedidoId);
+            if (bucket < 0) {
+                resultado.getNoEncontrados().add(pedidoId);
+            } else {
+                porBucket.computeIfAbsent(bucket, k -> new ArrayList<>()).add(pedidoId);
+            }
+        }
+        if (porBucket.isEmpty()) {
+            return resultado;
+        }
+
+        List<Object> respuestas = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<Long, List<String>> entry : porBucket.entrySet()) {
+                byte[][] campos = new byte[entry.getValue().size()][];
+                for (int i = 0; i < campos.length; i++) {
+                    campos[i] = bytes(entry.getValue().get(i));
+                }
+                connection.hashCommands().hMGet(bytes(PREFIJO_BUCKET + entry.getKey()), campos);
             }
-            
-            TrackingInfo info = objectMapper.readValue(data, TrackingInfo.class);
-            logger.info("📋 Estado consultado para pedido ID: {} - Estado: {}", pedidoId, info.getEstado());
-            return info;
-            
-        } catch (JsonProcessingException e) {
-            logger.error("❌ Error al deserializar tracking para pedido ID: {} - {}", pedidoId, e.getMessage());
             return null;
+        });
+
+        int r = 0;
+        for (List<String> pedidos : porBucket.values()) {
+            List<?> valores = (List<?>) respuestas.get(r++);
+            for (int i = 0; i < pedidos.size(); i++) {
+                String valor = (String) valores.get(i);
+                String estado = estadoBucket(valor);
+                if (estado == null) {
+                    resultado.getNoEncontrados().add(pedidos.get(i));
+                    continue;
+                }
+                String fecha = soloEstado ? null : aFechaIso(valor.substring(valor.indexOf(':') + 1));
+                resultado.getEncontrados().put(pedidos.get(i), new TrackingInfo(pedidos.get(i), estado, fecha));
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Bucket del pedido (id / tamaño), o -1 si el id no es numérico
+     */
+    private long numeroBucket(String pedidoId) {
+        try {
+            long id = Long.parseLong(pedidoId);
+            return id >= 0 ? id / tamanoBucket : -1;
+        } catch (NumberFormatException e) {
+            return -1;
         }
     }
 
     /**
-     * Actualiza el estado del pedido con timestamp y logging
+     * Estado de un valor del bucket ("ordinal:epoch ms"), o null si no es válido
+     */
+    static String estadoBucket(String valor) {
+        int separador = valor != null ? valor.indexOf(':') : -1;
+        if (separador <= 0) {
+            return null;
+        }
+        try {
+            int ordinal = Integer.parseInt(valor, 0, separador, 10);
+            return ordinal < ESTADOS.size() ? ESTADOS.get(ordinal) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Advierte si Redis guardaría los buckets sin la codificación compacta (listpack), que
+     * solo se usa hasta hash-max-listpack-entries campos (128 por defecto)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void verificarCodificacionBuckets() {
+        if (!almacenamientoBuckets) {
+            return;
+        }
+        try {
+            // hash-max-ziplist-entries es el nombre anterior, aceptado también por Redis 7
+            Properties config = redisTemplate.execute(
+                (RedisCallback<Properties>) connection -> connection.serverCommands().getConfig("hash-max-ziplist-entries"));
+            String maximo = config != null ? config.getProperty("hash-max-ziplist-entries") : null;
+            if (maximo != null && Integer.parseInt(maximo) < tamanoBucket) {
+                logger.warn("⚠️ hash-max-listpack-entries ({}) es menor que el tamaño de bucket ({}): " +
+                            "los buckets no usarán la codificación compacta", maximo, tamanoBucket);
+            }
+        } catch (Exception e) {
+            logger.debug("No se pudo consultar la configuración de Redis - {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Fecha de un hash de tracking (epoch ms) en formato ISO local, como se expone en la API.
+     * Las fechas del formato JSON anterior ya están en ISO y se devuelven tal cual.
+     */
+    static String aFechaIso(String valor) {
+        if (valor == null || valor.isEmpty() || valor.indexOf('-') >= 0) {
+            return valor;
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(valor)), ZoneId.systemDefault())
+            .format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+    }
+
+    /**
+     * Fecha guardada en el hash de tracking: epoch ms en la zona horaria del servicio
+     */
+    static long aEpochMs(LocalDateTime fecha) {
+        return fecha.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Actualiza el estado del pedido con timestamp y logging.
+     * La transición completa (estado, historial, contadores y outbox hacia
+     * pedido-service) se ejecuta en Redis como un único script Lua, por lo que es
+     * atómica por pedido. La notificación a pedido-service la entrega después
+     * {@link PedidoSyncDispatcher}, fuera del hilo de la petición, y el nuevo estado se
+     * publica en {@link TrackingStreamService#CANAL_EVENTOS} para los clientes conectados por SSE.
      */
     public void actualizarEstadoPedido(String pedidoId, String nuevoEstado) {
         if (!ESTADOS_VALIDOS.contains(nuevoEstado)) {
@@ -71,74 +283,170 @@ public class TrackingService {
             throw new IllegalArgumentException("Estado inválido: " + nuevoEstado);
         }
 
-        try {
-            String estadoAnterior = null;
-            
-            // Obtener estado anterior si existe
-            String dataAnterior = redisTemplate.opsForValue().get("tracking:" + pedidoId);
-            if (dataAnterior != null) {
-                try {
-                    TrackingInfo infoAnterior = objectMapper.readValue(dataAnterior, TrackingInfo.class);
-                    estadoAnterior = infoAnterior.getEstado();
-                } catch (JsonProcessingException e) {
-                    logger.warn("⚠️ Error al leer estado anterior para pedido ID: {}", pedidoId);
+        // pedido-service identifica los pedidos con un Long: un id no numérico no podría sincronizarse
+        if (numeroBucket(pedidoId) < 0) {
+            throw new IllegalArgumentException("ID de pedido no numérico: " + pedidoId);
+        }
+
+        LocalDateTime ahora = LocalDateTime.now();
+        String fecha = ahora.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+        
+        // Transición atómica en Redis: devuelve el estado anterior (null si no existía)
+        String estadoAnterior = redisTemplate.execute(
+            transicionEstadoScript, clavesTransicion(pedidoId),
+            argumentosTransicion(pedidoId, nuevoEstado, ahora).toArray()
+        );
+        // Las demás instancias invalidan al recibir el evento publicado por el script
+        cacheService.invalidar(pedidoId);
+        
+        // Log detallado por pedido (DEBUG: en los lotes se ejecuta cientos de veces por ciclo)
+        if (estadoAnterior != null) {
+            logger.debug("🔄 Estado actualizado para pedido ID: {} - {} → {} ({})", 
+                       pedidoId, estadoAnterior, nuevoEstado, fecha);
+        } else {
+            logger.debug("✅ Estado inicial creado para pedido ID: {} - {} ({})", 
+                       pedidoId, nuevoEstado, fecha);
+        }
+    }
+
+    /**
+     * Aplica varias transiciones (pedidoId → estado) ejecutando el script de transición por pedido
+     * en un único pipeline: todos los EVALSHA se envían juntos y se leen las respuestas al final.
+     * Devuelve los pedidos rechazados por estado inválido junto con el motivo; los errores de
+     * Redis se propagan para que el emisor reintente el lote completo.
+     */
+    public Map<String, String> actualizarEstadosLote(Map<String, String> estados) {
+        Map<String, String> rechazados = new LinkedHashMap<>();
+        Map<String, String> validos = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : estados.entrySet()) {
+            if (!ESTADOS_VALIDOS.contains(entry.getValue())) {
+                rechazados.put(entry.getKey(), "Estado inválido: " + entry.getValue());
+            } else if (numeroBucket(entry.getKey()) < 0) {
+                rechazados.put(entry.getKey(), "ID de pedido no numérico: " + entry.getKey());
+            } else {
+                validos.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        if (!validos.isEmpty()) {
+            LocalDateTime ahora = LocalDateTime.now();
+            String fecha = ahora.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+            List<Object> anteriores;
+            try {
+                anteriores = ejecutarTransicionesPipeline(validos, ahora);
+            } catch (DataAccessException e) {
+                if (!esScriptNoCargado(e)) {
+                    throw e;
                 }
+                // Redis perdió el script (reinicio o SCRIPT FLUSH): se registra de nuevo y se reintenta una vez
+                logger.warn("⚠️ Script de transición no cargado en Redis, se registra nuevamente");
+                redisTemplate.execute((RedisCallback<String>) connection -> connection.scriptingCommands()
+                    .scriptLoad(transicionEstadoScript.getScriptAsString().getBytes(StandardCharsets.UTF_8)));
+                anteriores = ejecutarTransicionesPipeline(validos, ahora);
             }
+            validos.keySet().forEach(cacheService::invalidar);
 
-            // Crear nueva información de tracking
-            TrackingInfo nuevoTracking = new TrackingInfo(
-                pedidoId, 
-                nuevoEstado, 
-                LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)
-            );
-            
-            // Almacenar en Redis
-            String data = objectMapper.writeValueAsString(nuevoTracking);
-            redisTemplate.opsForValue().set("tracking:" + pedidoId, data);
-            
-            // Agregar al historial
-            agregarAlHistorial(pedidoId, nuevoEstado, estadoAnterior);
-            
-            // Notificar al pedido-service para consistencia eventual
-            notificarPedidoService(pedidoId, nuevoEstado);
-            
-            // Log detallado
-            if (estadoAnterior != null) {
-                logger.info("🔄 Estado actualizado para pedido ID: {} - {} → {} ({})", 
-                           pedidoId, estadoAnterior, nuevoEstado, 
-                           LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-            } else {
-                logger.info("✅ Estado inicial creado para pedido ID: {} - {} ({})", 
-                           pedidoId, nuevoEstado, 
-                           LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+            if (logger.isDebugEnabled()) {
+                int i = 0;
+                for (Map.Entry<String, String> entry : validos.entrySet()) {
+                    logger.debug("🔄 Estado actualizado para pedido ID: {} - {} → {} ({})",
+                                 entry.getKey(), anteriores.get(i++), entry.getValue(), fecha);
+                }
+            }
+        }
+
+        logger.info("🔄 Lote de {} transiciones aplicado - {} rechazadas", estados.size(), rechazados.size());
+        return rechazados;
+    }
+
+    private List<Object> ejecutarTransicionesPipeline(Map<String, String> estados, LocalDateTime ahora) {
+        byte[] sha = transicionEstadoScript.getSha1().getBytes(StandardCharsets.UTF_8);
+
+        return redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<String, String> entry : estados.entrySet()) {
+                String pedidoId = entry.getKey();
+                List<String> claves = clavesTransicion(pedidoId);
+                List<String> argumentos = argumentosTransicion(pedidoId, entry.getValue(), ahora);
+                byte[][] parametros = new byte[claves.size() + argumentos.size()][];
+                int i = 0;
+                for (String clave : claves) {
+                    parametros[i++] = bytes(clave);
+                }
+                for (String argumento : argumentos) {
+                    parametros[i++] = bytes(argumento);
+                }
+                connection.scriptingCommands().evalSha(sha, ReturnType.VALUE, claves.size(), parametros);
+            }
+            return null;
+        });
+    }
+
+    private List<String> clavesTransicion(String pedidoId) {
+        String claveTracking = almacenamientoBuckets ? PREFIJO_BUCKET + numeroBucket(pedidoId) : "tracking:" + pedidoId;
+        return List.of(claveTracking, "historial:" + pedidoId,
+                       TrackingEstadisticasService.CLAVE_ESTADISTICAS, PedidoSyncDispatcher.CLAVE_OUTBOX,
+                       TrackingEstadisticasService.CLAVE_RECONSTRUYENDO, TrackingEstadisticasService.CLAVE_RECONSTRUCCION,
+                       TrackingEstadisticasService.CLAVE_CONTADAS);
+    }
+
+    /**
+     * Argumentos del script de transición: el valor del bucket (vacío sin buckets) y los nombres
+     * de los estados por ordinal, que codifican el estado en el bucket y en el historial
+     */
+    private List<String> argumentosTransicion(String pedidoId, String estado, LocalDateTime ahora) {
+        long epochMs = aEpochMs(ahora);
+        List<String> argumentos = new ArrayList<>(9 + ESTADOS.size());
+        argumentos.add(pedidoId);
+        argumentos.add(estado);
+        argumentos.add(ahora.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        argumentos.add(String.valueOf(MAX_HISTORIAL));
+        argumentos.add(TrackingStreamService.CANAL_EVENTOS);
+        argumentos.add(String.valueOf(epochMs));
+        argumentos.add(String.valueOf(HistorialCodec.segundos(ahora)));
+        argumentos.add(almacenamientoBuckets ? ESTADOS.indexOf(estado) + ":" + epochMs : "");
+        argumentos.addAll(ESTADOS);
+        return argumentos;
+    }
+
+    private static boolean esScriptNoCargado(Throwable error) {
+        for (Throwable causa = error; causa != null; causa = causa.getCause()) {
+            if (causa.getMessage() != null && causa.getMessage().contains("NOSCRIPT")) {
+                return true;
             }
-            
-        } catch (JsonProcessingException e) {
-            logger.error("❌ Error al serializar tracking para pedido ID: {} - {}", pedidoId, e.getMessage());
-            throw new RuntimeException("Error al actualizar tracking", e);
         }
+        return false;
+    }
+
+    private static byte[] bytes(String valor) {
+        return valor.getBytes(StandardCharsets.UTF_8);
     }
 
     /**
-     * Obtiene el historial de cambios de estado de un pedido
+     * Obtiene el historial de cambios de estado de un pedido, de la entrada más reciente a la más antigua.
+     * El historial se guarda en el formato compacto de {@link HistorialCodec}; los pedidos que aún
+     * conservan la lista JSON anterior se leen con Jackson hasta que se migren.
      */
     public List<HistorialEntry> getHistorialPedido(String pedidoId) {
         try {
-            List<String> historial = redisTemplate.opsForList().range("historial:" + pedidoId, 0, -1);
+            List<byte[]> historial = redisTemplate.execute(lecturaHistorialScript, RedisSerializer.string(),
+                                                           SERIALIZADOR_BYTES, List.of("historial:" + pedidoId));
             List<HistorialEntry> entries = new ArrayList<>();
             
             if (historial != null) {
-                for (String entry : historial) {
+                for (byte[] entry : historial) {
                     try {
-                        HistorialEntry historialEntry = objectMapper.readValue(entry, HistorialEntry.class);
-                        entries.add(historialEntry);
-                    } catch (JsonProcessingException e) {
+                        if (HistorialCodec.esCompacto(entry)) {
+                            entries.addAll(HistorialCodec.decodificar(entry));
+                        } else {
+                            entries.add(objectMapper.readValue(entry, HistorialEntry.class));
+                        }
+                    } catch (IOException | IllegalArgumentException e) {
                         logger.warn("⚠️ Error al deserializar entrada de historial para pedido ID: {}", pedidoId);
                     }
                 }
             }
             
-            logger.info("📚 Historial consultado para pedido ID: {} - {} entradas", pedidoId, entries.size());
+            logger.debug("📚 Historial consultado para pedido ID: {} - {} entradas", pedidoId, entries.size());
             return entries;
             
         } catch (Exception e) {
@@ -148,31 +456,13 @@ public class TrackingService {
     }
 
     /**
-     * Obtiene estadísticas de tracking
+     * Obtiene estadísticas de tracking a partir de los contadores incrementales
      */
     public Map<String, Object> getEstadisticas() {
         Map<String, Object> stats = new HashMap<>();
         
         try {
-            Set<String> keys = redisTemplate.keys("tracking:*");
-            stats.put("totalPedidosTrackeados", keys != null ? keys.size() : 0);
-            
-            Map<String, Integer> estadosCounts = new HashMap<>();
-            if (keys != null) {
-                for (String key : keys) {
-                    try {
-                        String data = redisTemplate.opsForValue().get(key);
-                        if (data != null) {
-                            TrackingInfo info = objectMapper.readValue(data, TrackingInfo.class);
-                            estadosCounts.merge(info.getEstado(), 1, Integer::sum);
-                        }
-                    } catch (JsonProcessingException e) {
-                        logger.warn("⚠️ Error al procesar estadística para key: {}", key);
-                    }
-                }
-            }
-            
-            stats.put("estadosDistribucion", estadosCounts);
+            stats.putAll(estadisticasService.obtenerEstadisticas());
             stats.put("fechaConsulta", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
             
             logger.info("📊 Estadísticas generadas - Total pedidos: {}", stats.get("totalPedidosTrackeados"));
@@ -185,69 +475,6 @@ public class TrackingService {
         return stats;
     }
 
-    /**
-     * Agrega entrada al historial de cambios
-     */
-    private void agregarAlHistorial(String pedidoId, String nuevoEstado, String estadoAnterior) {
-        try {
-            HistorialEntry entry = new HistorialEntry(
-                LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME),
-                estadoAnterior,
-                nuevoEstado
-            );
-            
-            String entryJson = objectMapper.writeValueAsString(entry);
-            redisTemplate.opsForList().leftPush("historial:" + pedidoId, entryJson);
-            
-            // Mantener solo las últimas 50 entradas del historial
-            redisTemplate.opsForList().trim("historial:" + pedidoId, 0, 49);
-            
-        } catch (JsonProcessingException e) {
-            logger.error("❌ Error al agregar al historial para pedido ID: {} - {}", pedidoId, e.getMessage());
-        }
-    }
-
-    /**
-     * Notifica al pedido-service sobre cambios de estado para consistencia eventual
-     */
-    private void notificarPedidoService(String pedidoId, String nuevoEstado) {
-        try {
-            // Obtener JWT del contexto de seguridad
-            String jwtToken = null;
-            Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-            if (principal instanceof Jwt) {
-                jwtToken = ((Jwt) principal).getTokenValue();
-            }
-            
-            if (jwtToken == null) {
-                logger.warn("⚠️ No se pudo obtener JWT token para sincronizar pedido ID: {}", pedidoId);
-                return;
-            }
-            
-            // Preparar headers y body
-            org.springframework.http.HttpHeaders headers = new org.springframework.http.HttpHeaders();
-            headers.setBearerAuth(jwtToken);
-            headers.setContentType(org.springframework.http.MediaType.APPLICATION_JSON);
-            
-            Map<String, String> requestBody = Map.of("estado", nuevoEstado);
-            org.springframework.http.HttpEntity<Map<String, String>> entity = 
-                new org.springframework.http.HttpEntity<>(requestBody, headers);
-            
-            // Llamar al endpoint de sincronización del pedido-service
-            String url = pedidoServiceBaseUrl + "/api/pedidos/" + pedidoId + "/sync-from-tracking";
-            restTemplate.exchange(url, org.springframework.http.HttpMethod.PUT, entity, String.class);
-            
-            logger.info("🔄 Pedido-service notificado exitosamente para pedido ID: {} con estado: {}", pedidoId, nuevoEstado);
-            
-        } catch (RestClientException e) {
-            logger.warn("⚠️ Error al notificar pedido-service para pedido ID: {} - {}. La sincronización será manejada posteriormente.", 
-                       pedidoId, e.getMessage());
-            // En una implementación más robusta, aquí se podría agregar a una cola de reintentos
-        } catch (Exception e) {
-            logger.error("❌ Error inesperado al notificar pedido-service para pedido ID: {} - {}", pedidoId, e.getMessage());
-        }
-    }
-
     /**
      * Método para sincronización manual en caso de fallos automáticos
      */
@@ -272,8 +499,8 @@ public class TrackingService {
                 new org.springframework.http.HttpEntity<>(requestBody, headers);
             
             // Llamar al endpoint de sincronización del pedido-service
-            String url = pedidoServiceBaseUrl + "/api/pedidos/" + pedidoId + "/sync-from-tracking";
-            restTemplate.exchange(url, org.springframework.http.HttpMethod.PUT, entity, String.class);
+            String url = pedidoServiceBaseUrl + "/api/pedidos/{pedidoId}/sync-from-tracking";
+            restTemplate.exchange(url, org.springframework.http.HttpMethod.PUT, entity, String.class, pedidoId);
             
             resultado.put("message", "Sincronización manual exitosa");
             resultado.put("pedidoId", pedidoId);
@@ -316,6 +543,17 @@ public class TrackingService {
         public void setFechaActualizacion(String fechaActualizacion) { this.fechaActualizacion = fechaActualizacion; }
     }
 
+    public static class ConsultaLoteResultado {
+        private Map<String, TrackingInfo> encontrados = new LinkedHashMap<>();
+        private List<String> noEncontrados = new ArrayList<>();
+
+        // Getters y setters
+        public Map<String, TrackingInfo> getEncontrados() { return encontrados; }
+        public void setEncontrados(Map<String, TrackingInfo> encontrados) { this.encontrados = encontrados; }
+        public List<String> getNoEncontrados() { return noEncontrados; }
+        public void setNoEncontrados(List<String> noEncontrados) { this.noEncontrados = noEncontrados; }
+    }
+
     public static class HistorialEntry {
         private String timestamp;
         private String estadoAnterior;
@@ -0,0 +1,415 @@
+package com.proyecto.trackingservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.proyecto.common.http.ServiceTokenProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streaming de cambios de estado por Server-Sent Events.
+ *
+ * El script de transición publica cada nuevo estado en {@link #CANAL_EVENTOS}; este
+ * servicio, con un contenedor de listeners propio (la caché local usa otro), reenvía el
+ * mensaje a las conexiones SSE suscritas a ese pedido. Al conectarse, cada cliente recibe primero el
+ * estado actual de sus pedidos (un solo MGET) y después solo los cambios, de modo que una
+ * conexión abierta reemplaza la consulta periódica de {@code GET /api/tracking/{pedidoId}}.
+ * Las conexiones inactivas reciben un comentario periódico para que proxies y gateway no
+ * las cierren.
+ *
+ * El hilo que recibe los eventos de Redis solo los encola: cada conexión tiene un buffer
+ * acotado ({@code tracking.stream.buffer-por-conexion}) que vacía un pool de envío propio,
+ * de modo que un cliente lento no retrasa a los demás. Una conexión cuyo buffer se llena
+ * se cierra; el navegador reconecta y recibe de nuevo el estado actual.
+ */
+@Service
+public class TrackingStreamService implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrackingStreamService.class);
+
+    public static final String CANAL_EVENTOS = "tracking:eventos";
+
+    private static final String EVENTO_ESTADO = "estado";
+
+    private final TrackingService trackingService;
+    private final ServiceTokenProvider tokenProvider;
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Map<String, Set<Suscripcion>> suscripcionesPorPedido = new ConcurrentHashMap<>();
+    private final Set<Suscripcion> conexiones = ConcurrentHashMap.newKeySet();
+    private final AtomicLong eventosRecibidos = new AtomicLong(0);
+    private final AtomicLong eventosEnviados = new AtomicLong(0);
+    private final AtomicLong eventosDescartados = new AtomicLong(0);
+    private final AtomicLong conexionesLentas = new AtomicLong(0);
+    private final ThreadPoolTaskExecutor envios;
+    private final int maxConexiones;
+    private final int bufferPorConexion;
+
+    @Value("${pedido.service.base.url:http://pedido-service:8083}")
+    private String pedidoServiceBaseUrl;
+
+    @Value("${tracking.stream.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Value("${tracking.stream.max-pedidos-por-conexion:1000}")
+    private int maxPedidosPorConexion;
+
+    public TrackingStreamService(TrackingService trackingService, ServiceTokenProvider tokenProvider,
+                                 RestTemplate restTemplate, MeterRegistry meterRegistry,
+                                 @Value("${tracking.stream.max-conexiones:10000}") int maxConexiones,
+                                 @Value("${tracking.stream.buffer-por-conexion:256}") int bufferPorConexion,
+                                 @Value("${tracking.stream.hilos-envio:8}") int hilosEnvio) {
+        this.trackingService = trackingService;
+        this.tokenProvider = tokenProvider;
+        this.restTemplate = restTemplate;
+        this.maxConexiones = maxConexiones;
+        this.bufferPorConexion = bufferPorConexion;
+
+        // Cada conexión tiene como mucho una tarea de envío en cola, así que la cola
+        // queda acotada por el máximo de conexiones
+        this.envios = new ThreadPoolTaskExecutor();
+        envios.setCorePoolSize(hilosEnvio);
+        envios.setMaxPoolSize(hilosEnvio);
+        envios.setQueueCapacity(maxConexiones);
+        envios.setThreadNamePrefix("tracking-sse-");
+        envios.setDaemon(true);
+        envios.initialize();
+        new ExecutorServiceMetrics(envios.getThreadPoolExecutor(), "tracking.stream.envios", Tags.empty())
+            .bindTo(meterRegistry);
+    }
+
+    /**
+     * Abre una conexión SSE para los pedidos indicados.
+     * Lanza IllegalArgumentException si la lista está vacía o supera el máximo por conexión,
+     * e IllegalStateException si se alcanzó el máximo de conexiones de la instancia.
+     */
+    public SseEmitter suscribir(Collection<String> pedidoIds) {
+        Set<String> ids = new LinkedHashSet<>(pedidoIds);
+        if (ids.isEmpty()) {
+            throw new IllegalArgumentException("Debe indicar al menos un ID de pedido");
+        }
+        if (ids.size() > maxPedidosPorConexion) {
+            throw new IllegalArgumentException("Máximo " + maxPedidosPorConexion + " pedidos por conexión");
+        }
+        if (conexiones.size() >= maxConexiones) {
+            throw new IllegalStateException("Se alcanzó el máximo de conexiones de streaming");
+        }
+
+        Suscripcion suscripcion = new Suscripcion(new SseEmitter(timeoutMs), ids);
+        suscripcion.emitter.onCompletion(() -> cancelar(suscripcion));
+        suscripcion.emitter.onTimeout(() -> cancelar(suscripcion));
+        suscripcion.emitter.onError(e -> cancelar(suscripcion));
+
+        // Se registra antes de leer el estado inicial: los eventos que lleguen mientras tanto
+        // quedan en el buffer y se envían después, nunca antes que la foto inicial
+        conexiones.add(suscripcion);
+        for (String pedidoId : ids) {
+            suscripcionesPorPedido.computeIfAbsent(pedidoId, k -> ConcurrentHashMap.newKeySet()).add(suscripcion);
+        }
+
+        List<SseEmitter.SseEventBuilder> iniciales = new ArrayList<>();
+        try {
+            TrackingService.ConsultaLoteResultado actual = trackingService.getEstadosPedidos(new ArrayList<>(ids));
+            for (TrackingService.TrackingInfo info : actual.getEncontrados().values()) {
+                iniciales.add(SseEmitter.event().name(EVENTO_ESTADO).data(info, MediaType.APPLICATION_JSON));
+            }
+        } catch (RuntimeException e) {
+            cancelar(suscripcion);
+            throw e;
+        }
+        suscripcion.iniciar(iniciales);
+
+        logger.debug("📡 Conexión SSE abierta para {} pedidos - {} conexiones activas", ids.size(), conexiones.size());
+        return suscripcion.emitter;
+    }
+
+    /**
+     * Abre una conexión SSE para los pedidos de un cliente, obtenidos de pedido-service.
+     * Los pedidos creados después de conectarse se incluyen al reconectar.
+     */
+    public SseEmitter suscribirCliente(Long clienteId) {
+        List<String> ids = obtenerPedidosCliente(clienteId);
+        if (ids.isEmpty()) {
+            throw new IllegalArgumentException("El cliente " + clienteId + " no tiene pedidos");
+        }
+        return suscribir(ids);
+    }
+
+    /**
+     * Recibe los estados publicados por el script de transición y los reenvía
+     * a las conexiones suscritas al pedido
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        eventosRecibidos.incrementAndGet();
+        String cuerpo = new String(message.getBody(), StandardCharsets.UTF_8);
+        TrackingService.TrackingInfo info;
+        try {
+            info = objectMapper.readValue(cuerpo, TrackingService.TrackingInfo.class);
+        } catch (JsonProcessingException e) {
+            logger.warn("⚠️ Evento de tracking inválido en {} - {}", CANAL_EVENTOS, e.getMessage());
+            return;
+        }
+
+        Set<Suscripcion> suscripciones = suscripcionesPorPedido.get(info.getPedidoId());
+        if (suscripciones == null) {
+            return;
+        }
+        for (Suscripcion suscripcion : suscripciones) {
+            // Se reenvía el JSON publicado tal cual, sin volver a serializarlo
+            suscripcion.encolar(SseEmitter.event().name(EVENTO_ESTADO).data(cuerpo, MediaType.APPLICATION_JSON));
+        }
+    }
+
+    /**
+     * Evento descartado porque la cola del contenedor de listeners está llena.
+     * Las conexiones afectadas recuperan el estado al reconectar.
+     */
+    public void registrarEventoDescartado() {
+        if (eventosDescartados.incrementAndGet() % 1000 == 1) {
+            logger.warn("⚠️ Cola de eventos de tracking llena: se descartan eventos ({} en total)",
+                        eventosDescartados.get());
+        }
+    }
+
+    /**
+     * Comentario periódico para mantener abiertas las conexiones a través de proxies
+     */
+    @Scheduled(fixedDelayString = "${tracking.stream.heartbeat-ms:15000}")
+    public void enviarHeartbeat() {
+        for (Suscripcion suscripcion : conexiones) {
+            suscripcion.encolar(SseEmitter.event().comment("ping"));
+        }
+    }
+
+    public Map<String, Object> obtenerEstadisticas() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("conexionesActivas", conexiones.size());
+        estadisticas.put("pedidosSuscritos", suscripcionesPorPedido.size());
+        estadisticas.put("eventosRecibidos", eventosRecibidos.get());
+        estadisticas.put("eventosEnviados", eventosEnviados.get());
+        estadisticas.put("eventosDescartados", eventosDescartados.get());
+        estadisticas.put("conexionesLentasCerradas", conexionesLentas.get());
+        estadisticas.put("enviosEnCola", envios.getThreadPoolExecutor().getQueue().size());
+        return estadisticas;
+    }
+
+    @PreDestroy
+    public void cerrarConexiones() {
+        for (Suscripcion suscripcion : conexiones) {
+            suscripcion.emitter.complete();
+        }
+        envios.getThreadPoolExecutor().shutdownNow();
+        try {
+            envios.getThreadPoolExecutor().awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void cancelar(Suscripcion suscripcion) {
+        if (!conexiones.remove(suscripcion)) {
+            return;
+        }
+        for (String pedidoId : suscripcion.pedidoIds) {
+            suscripcionesPorPedido.computeIfPresent(pedidoId, (id, suscripciones) -> {
+                suscripciones.remove(suscripcion);
+                return suscripciones.isEmpty() ? null : suscripciones;
+            });
+        }
+        logger.debug("📴 Conexión SSE cerrada - {} conexiones activas", conexiones.size());
+    }
+
+    /**
+     * Recorre por cursor los pedidos del cliente en pedido-service, hasta el máximo por conexión
+     */
+    private List<String> obtenerPedidosCliente(Long clienteId) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBearerAuth(tokenProvider.obtenerToken());
+        HttpEntity<Void> entity = new HttpEntity<>(headers);
+
+        List<String> ids = new ArrayList<>();
+        Long cursor = null;
+        do {
+            String url = pedidoServiceBaseUrl + "/api/pedidos/cliente/{clienteId}?limite={limite}" +
+                (cursor != null ? "&cursor=" + cursor : "");
+            PaginaPedidos pagina = restTemplate.exchange(url, HttpMethod.GET, entity, PaginaPedidos.class,
+                clienteId, Math.min(200, maxPedidosPorConexion - ids.size())).getBody();
+            if (pagina == null || pagina.getItems() == null) {
+                break;
+            }
+            for (PedidoResumen pedido : pagina.getItems()) {
+                ids.add(String.valueOf(pedido.getId()));
+            }
+            cursor = pagina.getSiguienteCursor();
+        } while (cursor != null && ids.size() < maxPedidosPorConexion);
+        return ids;
+    }
+
+    /**
+     * Conexión SSE y pedidos a los que está suscrita. Los eventos se acumulan en un buffer
+     * acotado que vacía una sola tarea del pool de envío a la vez, por lo que los envíos de
+     * una conexión mantienen el orden. El monitor de la suscripción solo protege el buffer:
+     * nunca se mantiene durante un envío.
+     */
+    private class Suscripcion {
+        private final SseEmitter emitter;
+        private final Set<String> pedidoIds;
+        private final ArrayDeque<SseEmitter.SseEventBuilder> pendientes = new ArrayDeque<>();
+        // Foto inicial; hasta tenerla los eventos solo se acumulan
+        private List<SseEmitter.SseEventBuilder> iniciales;
+        private boolean iniciada = false;
+        private boolean enviando = false;
+        private boolean cerrada = false;
+        private boolean lenta = false;
+
+        Suscripcion(SseEmitter emitter, Set<String> pedidoIds) {
+            this.emitter = emitter;
+            this.pedidoIds = pedidoIds;
+        }
+
+        void iniciar(List<SseEmitter.SseEventBuilder> eventos) {
+            synchronized (this) {
+                iniciales = eventos;
+                iniciada = true;
+            }
+            programar();
+        }
+
+        void encolar(SseEmitter.SseEventBuilder evento) {
+            boolean desbordada = false;
+            synchronized (this) {
+                if (cerrada) {
+                    return;
+                }
+                if (pendientes.size() >= bufferPorConexion) {
+                    // Cliente que no consume al ritmo de los eventos: se cierra la conexión
+                    // en lugar de acumular eventos sin límite
+                    cerrada = true;
+                    lenta = true;
+                    desbordada = true;
+                    pendientes.clear();
+                } else {
+                    pendientes.add(evento);
+                }
+            }
+            if (desbordada) {
+                conexionesLentas.incrementAndGet();
+                cancelar(this);
+                logger.debug("🐢 Conexión SSE cerrada por no consumir los eventos ({} en el buffer)", bufferPorConexion);
+            }
+            programar();
+        }
+
+        /**
+         * Programa el vaciado del buffer si no hay ya una tarea de envío para esta conexión
+         */
+        private void programar() {
+            synchronized (this) {
+                if (!iniciada || enviando || (!cerrada && iniciales == null && pendientes.isEmpty())) {
+                    return;
+                }
+                enviando = true;
+            }
+            try {
+                envios.execute(this::vaciar);
+            } catch (TaskRejectedException e) {
+                synchronized (this) {
+                    enviando = false;
+                    cerrada = true;
+                }
+                cancelar(this);
+            }
+        }
+
+        private void vaciar() {
+            List<SseEmitter.SseEventBuilder> lote;
+            synchronized (this) {
+                lote = iniciales != null && !cerrada ? iniciales : new ArrayList<>();
+                iniciales = null;
+            }
+            boolean completar;
+            while (true) {
+                for (SseEmitter.SseEventBuilder evento : lote) {
+                    if (!enviar(evento)) {
+                        break;
+                    }
+                }
+                synchronized (this) {
+                    if (cerrada || pendientes.isEmpty()) {
+                        pendientes.clear();
+                        enviando = false;
+                        completar = lenta;
+                        break;
+                    }
+                    lote = new ArrayList<>(pendientes);
+                    pendientes.clear();
+                }
+            }
+            if (completar) {
+                emitter.complete();
+            }
+        }
+
+        private boolean enviar(SseEmitter.SseEventBuilder evento) {
+            try {
+                emitter.send(evento);
+                eventosEnviados.incrementAndGet();
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                // Cliente desconectado: se libera la suscripción sin esperar al timeout;
+                // el contenedor de servlets completa la petición asíncrona con el error
+                synchronized (this) {
+                    cerrada = true;
+                }
+                cancelar(this);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Respuesta de GET /api/pedidos/cliente/{clienteId}
+     */
+    public static class PaginaPedidos {
+        private List<PedidoResumen> items;
+        private Long siguienteCursor;
+
+        public List<PedidoResumen> getItems() { return items; }
+        public void setItems(List<PedidoResumen> items) { this.items = items; }
+        public Long getSiguienteCursor() { return siguienteCursor; }
+        public void setSiguienteCursor(Long siguienteCursor) { this.siguienteCursor = siguienteCursor; }
+    }
+
+    public static class PedidoResumen {
+        private Long id;
+
+        public Long getId() { return id; }
+        public void setId(Long id) { this.id = id; }
+    }
+}
@@ -0,0 +1,44 @@
+-- Conteo de un lote de claves durante la reconstrucción de estadísticas
+-- KEYS[1] = estadisticas:tracking:reconstruccion (contadores en reconstrucción)
+-- KEYS[2] = estadisticas:tracking:contadas (claves ya contadas en esta reconstrucción)
+-- KEYS[3..] = claves tracking:{pedidoId}, o tracking-bucket:{n} con almacenamiento por buckets
+-- ARGV[1] = '1' si las claves son buckets ("ordinal:epoch ms" por pedido)
+-- ARGV[2..] = nombres de los estados por ordinal (ARGV[2] corresponde al ordinal 0)
+-- Las claves que ya contó una transición se omiten: cada clave se cuenta una sola vez
+-- Devuelve {pedidos contados, valores sin estado válido}
+
+local ESTADO_BASE = 2
+local buckets = ARGV[1] == '1'
+local contados, invalidos = 0, 0
+
+local function contar(estado)
+    if estado then
+        redis.call('HINCRBY', KEYS[1], estado, 1)
+        redis.call('HINCRBY', KEYS[1], 'total', 1)
+        contados = contados + 1
+    else
+        invalidos = invalidos + 1
+    end
+end
+
+for i = 3, #KEYS do
+    local clave = KEYS[i]
+    if redis.call('SADD', KEYS[2], clave) == 1 then
+        local tipo = redis.call('TYPE', clave)['ok']
+        if buckets then
+            if tipo == 'hash' then
+                for _, valor in ipairs(redis.call('HVALS', clave)) do
+                    local ordinal = tonumber(string.match(valor, '^(%d+):'))
+                    contar(ordinal and ARGV[ESTADO_BASE + ordinal])
+                end
+            end
+        elseif tipo == 'hash' then
+            contar(redis.call('HGET', clave, 'estado'))
+        elseif tipo == 'string' then
+            local ok, info = pcall(cjson.decode, redis.call('GET', clave))
+            contar(ok and type(info) == 'table' and type(info['estado']) == 'string' and info['estado'])
+        end
+    end
+end
+
+return {contados, invalidos}
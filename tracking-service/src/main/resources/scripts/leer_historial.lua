@@ -0,0 +1,12 @@
+-- Lectura del historial de un pedido en cualquiera de sus formatos
+-- KEYS[1] = historial:{pedidoId}
+-- Devuelve un único elemento con el valor compacto, o las entradas JSON del formato anterior
+-- (lista, de la más reciente a la más antigua); vacío si el pedido no tiene historial
+
+local tipo = redis.call('TYPE', KEYS[1])['ok']
+if tipo == 'string' then
+    return {redis.call('GET', KEYS[1])}
+elseif tipo == 'list' then
+    return redis.call('LRANGE', KEYS[1], 0, -1)
+end
+return {}
@@ -0,0 +1,34 @@
+-- Lectura del estado de varios pedidos, compatible con ambos formatos de tracking:{pedidoId}
+-- (hash actual y JSON anterior, hasta completar la migración)
+-- KEYS = tracking:{pedidoId} de cada pedido
+-- ARGV[1] = '1' para leer solo el estado
+-- Devuelve por cada clave dos valores: estado y fecha (epoch ms en el hash, ISO en el JSON);
+-- nil si la clave no existe o no se pidió la fecha
+
+local soloEstado = ARGV[1] == '1'
+local resultado = {}
+
+for i, clave in ipairs(KEYS) do
+    local estado, fecha = false, false
+    local tipo = redis.call('TYPE', clave)['ok']
+    if tipo == 'hash' then
+        if soloEstado then
+            estado = redis.call('HGET', clave, 'estado')
+        else
+            local valores = redis.call('HMGET', clave, 'estado', 'fechaActualizacion')
+            estado, fecha = valores[1], valores[2]
+        end
+    elseif tipo == 'string' then
+        local ok, info = pcall(cjson.decode, redis.call('GET', clave))
+        if ok and type(info) == 'table' and type(info['estado']) == 'string' then
+            estado = info['estado']
+            if not soloEstado and type(info['fechaActualizacion']) == 'string' then
+                fecha = info['fechaActualizacion']
+            end
+        end
+    end
+    resultado[2 * i - 1] = estado
+    resultado[2 * i] = fecha
+end
+
+return resultado
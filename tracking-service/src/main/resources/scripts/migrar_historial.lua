@@ -0,0 +1,20 @@
+-- Conversión de historiales historial:{pedidoId} del formato anterior (lista de JSON) al compacto
+-- KEYS = listas a convertir
+-- ARGV = por cada clave, tres valores: longitud leída, entrada más reciente leída y valor compacto
+-- Una lista solo se reemplaza si no cambió desde la lectura (las transiciones agregan al inicio)
+-- Devuelve la cantidad de historiales convertidos
+
+local convertidos = 0
+
+for i, clave in ipairs(KEYS) do
+    local base = 3 * (i - 1)
+    if redis.call('TYPE', clave)['ok'] == 'list'
+        and redis.call('LLEN', clave) == tonumber(ARGV[base + 1])
+        and redis.call('LINDEX', clave, 0) == ARGV[base + 2] then
+        redis.call('DEL', clave)
+        redis.call('SET', clave, ARGV[base + 3])
+        convertidos = convertidos + 1
+    end
+end
+
+return convertidos
@@ -0,0 +1,19 @@
+-- Conversión de claves tracking:{pedidoId} del formato JSON anterior a hash
+-- KEYS = claves a convertir
+-- ARGV = por cada clave, tres valores: JSON leído, estado y fecha en epoch ms
+-- Una clave solo se convierte si conserva el JSON leído; si una transición la modificó
+-- mientras tanto, ya está en el formato nuevo y se omite
+-- Devuelve la cantidad de claves convertidas
+
+local convertidas = 0
+
+for i, clave in ipairs(KEYS) do
+    local base = 3 * (i - 1)
+    if redis.call('TYPE', clave)['ok'] == 'string' and redis.call('GET', clave) == ARGV[base + 1] then
+        redis.call('DEL', clave)
+        redis.call('HSET', clave, 'estado', ARGV[base + 2], 'fechaActualizacion', ARGV[base + 3])
+        convertidas = convertidas + 1
+    end
+end
+
+return convertidas
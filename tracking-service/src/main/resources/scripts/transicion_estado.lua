@@ -0,0 +1,168 @@
+-- Transición atómica del estado de un pedido
+-- KEYS[1] = tracking:{pedidoId} (hash con estado y fechaActualizacion en epoch ms), o
+--           tracking-bucket:{pedidoId / tamaño} (hash pedidoId → "ordinal:epoch ms") con almacenamiento por buckets
+-- KEYS[2] = historial:{pedidoId}
+-- KEYS[3] = estadisticas:tracking
+-- KEYS[4] = outbox:pedido-sync (stream de notificaciones hacia pedido-service)
+-- KEYS[5] = estadisticas:tracking:reconstruyendo (existe mientras se reconstruyen los contadores)
+-- KEYS[6] = estadisticas:tracking:reconstruccion (contadores en reconstrucción)
+-- KEYS[7] = estadisticas:tracking:contadas (claves ya contadas por la reconstrucción)
+-- ARGV[1] = pedidoId, ARGV[2] = nuevo estado, ARGV[3] = fecha ISO, ARGV[4] = máximo de entradas de historial
+-- ARGV[5] = canal pub/sub donde se publica el nuevo estado (suscriptores de streaming SSE)
+-- ARGV[6] = fecha en epoch ms (campo fechaActualizacion del hash)
+-- ARGV[7] = segundos de la fecha local tomada como UTC (entrada de historial)
+-- ARGV[8] = valor del bucket para el nuevo estado ("ordinal:epoch ms"); vacío si no se usan buckets
+-- ARGV[9..] = nombres de los estados por ordinal (ARGV[9] corresponde al ordinal 0)
+-- Devuelve el estado anterior o nil si el pedido no tenía tracking
+
+local ESTADO_BASE = 9
+
+local function ordinal(estado)
+    for i = ESTADO_BASE, #ARGV do
+        if ARGV[i] == estado then
+            return i - ESTADO_BASE
+        end
+    end
+    return -1
+end
+
+local function leerVarint(valor, pos)
+    local resultado, multiplicador = 0, 1
+    while true do
+        local b = string.byte(valor, pos)
+        pos = pos + 1
+        resultado = resultado + (b % 128) * multiplicador
+        if b < 128 then
+            return resultado, pos
+        end
+        multiplicador = multiplicador * 128
+    end
+end
+
+local function escribirVarint(partes, valor)
+    while valor >= 128 do
+        partes[#partes + 1] = string.char(valor % 128 + 128)
+        valor = math.floor(valor / 128)
+    end
+    partes[#partes + 1] = string.char(valor)
+end
+
+-- Historial compacto (ver HistorialCodec): byte de versión y, de la entrada más antigua a la
+-- más reciente, un byte con ambos ordinales y los segundos desde la entrada previa (varint zigzag)
+local function agregarHistorial(clave, anterior, nuevo, segundos, maximo)
+    local estados, tiempos = {}, {}
+    local actual = redis.call('GET', clave)
+    if actual and string.byte(actual, 1) == 1 then
+        local pos, tiempo = 2, 0
+        while pos <= #actual do
+            estados[#estados + 1] = string.byte(actual, pos)
+            local zigzag
+            zigzag, pos = leerVarint(actual, pos + 1)
+            if zigzag % 2 == 0 then
+                tiempo = tiempo + zigzag / 2
+            else
+                tiempo = tiempo - (zigzag + 1) / 2
+            end
+            tiempos[#tiempos + 1] = tiempo
+        end
+    end
+    estados[#estados + 1] = (anterior + 1) * 16 + nuevo
+    tiempos[#tiempos + 1] = segundos
+
+    local partes = {string.char(1)}
+    local previo = 0
+    for i = math.max(1, #estados - maximo + 1), #estados do
+        partes[#partes + 1] = string.char(estados[i])
+        local delta = tiempos[i] - previo
+        if delta >= 0 then
+            escribirVarint(partes, delta * 2)
+        else
+            escribirVarint(partes, -delta * 2 - 1)
+        end
+        previo = tiempos[i]
+    end
+    redis.call('SET', clave, table.concat(partes))
+end
+
+local anterior = false
+if ARGV[8] ~= '' then
+    local actual = redis.call('HGET', KEYS[1], ARGV[1])
+    if actual then
+        local ordinalActual = tonumber(string.match(actual, '^(%d+):'))
+        if ordinalActual then
+            anterior = ARGV[ESTADO_BASE + ordinalActual] or false
+        end
+    end
+    redis.call('HSET', KEYS[1], ARGV[1], ARGV[8])
+else
+    local tipo = redis.call('TYPE', KEYS[1])['ok']
+    if tipo == 'hash' then
+        anterior = redis.call('HGET', KEYS[1], 'estado')
+    elseif tipo == 'string' then
+        -- Formato anterior (JSON): se lee el estado y la clave se reemplaza por el hash
+        local ok, info = pcall(cjson.decode, redis.call('GET', KEYS[1]))
+        if ok and type(info) == 'table' and type(info['estado']) == 'string' then
+            anterior = info['estado']
+        end
+        redis.call('DEL', KEYS[1])
+    end
+    redis.call('HSET', KEYS[1], 'estado', ARGV[2], 'fechaActualizacion', ARGV[6])
+end
+
+local info = cjson.encode({
+    pedidoId = ARGV[1],
+    estado = ARGV[2],
+    fechaActualizacion = ARGV[3]
+})
+
+if redis.call('TYPE', KEYS[2])['ok'] == 'list' then
+    -- Historial en el formato anterior (lista de JSON) hasta que se migre
+    local entrada = {
+        timestamp = ARGV[3],
+        estadoAnterior = anterior or cjson.null,
+        estadoNuevo = ARGV[2]
+    }
+    redis.call('LPUSH', KEYS[2], cjson.encode(entrada))
+    redis.call('LTRIM', KEYS[2], 0, tonumber(ARGV[4]) - 1)
+else
+    agregarHistorial(KEYS[2], anterior and ordinal(anterior) or -1, ordinal(ARGV[2]),
+                     tonumber(ARGV[7]), tonumber(ARGV[4]))
+end
+
+local function ajustarContadores(clave)
+    if anterior ~= ARGV[2] then
+        if anterior then
+            redis.call('HINCRBY', clave, anterior, -1)
+        else
+            redis.call('HINCRBY', clave, 'total', 1)
+        end
+        redis.call('HINCRBY', clave, ARGV[2], 1)
+    end
+end
+
+ajustarContadores(KEYS[3])
+
+-- Durante una reconstrucción: si la clave ya se contó se aplica el mismo ajuste a los
+-- contadores reconstruidos; si no, se cuenta ahora con su estado nuevo y el recorrido la omite
+if redis.call('EXISTS', KEYS[5]) == 1 then
+    if redis.call('SADD', KEYS[7], KEYS[1]) == 0 then
+        ajustarContadores(KEYS[6])
+    elseif ARGV[8] ~= '' then
+        for _, valor in ipairs(redis.call('HVALS', KEYS[1])) do
+            local ordinalValor = tonumber(string.match(valor, '^(%d+):'))
+            local estadoValor = ordinalValor and ARGV[ESTADO_BASE + ordinalValor]
+            if estadoValor then
+                redis.call('HINCRBY', KEYS[6], estadoValor, 1)
+                redis.call('HINCRBY', KEYS[6], 'total', 1)
+            end
+        end
+    else
+        redis.call('HINCRBY', KEYS[6], ARGV[2], 1)
+        redis.call('HINCRBY', KEYS[6], 'total', 1)
+    end
+end
+
+redis.call('XADD', KEYS[4], '*', 'pedidoId', ARGV[1], 'estado', ARGV[2], 'fecha', ARGV[3])
+redis.call('PUBLISH', ARGV[5], info)
+
+return anterior
@@ -0,0 +1,143 @@
+package com.proyecto.trackingservice.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisExecProvider;
+import redis.embedded.RedisServer;
+import redis.embedded.util.OS;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Memoria por pedido de los dos almacenamientos del estado de tracking:
+ * un hash tracking:{id} por pedido y los buckets tracking-bucket:{id / 1000}.
+ *
+ * No forma parte de la suite normal. Ejecutar con:
+ * mvn test -Dtest=AlmacenamientoMemoriaBenchmark -Dbenchmark.memoria=true [-Dbenchmark.pedidos=1000000]
+ * El Redis embebido es 2.8; para medir con la versión de producción indicar su binario con
+ * -Dbenchmark.redis.ejecutable=/ruta/redis-server.
+ */
+@EnabledIfSystemProperty(named = "benchmark.memoria", matches = "true")
+class AlmacenamientoMemoriaBenchmark {
+
+    private static final int TAMANO_BUCKET = 1000;
+    private static final int PEDIDOS_POR_PIPELINE = 1000;
+    private static final long EPOCH_BASE_MS = 1_790_000_000_000L;
+
+    private static RedisServer redisServer;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redisTemplate;
+
+    private final int pedidos = Integer.getInteger("benchmark.pedidos", 200_000);
+
+    @BeforeAll
+    static void iniciarRedis() throws IOException {
+        int puerto;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            puerto = socket.getLocalPort();
+        }
+        RedisExecProvider ejecutable = RedisExecProvider.defaultProvider();
+        String ruta = System.getProperty("benchmark.redis.ejecutable");
+        if (ruta != null) {
+            ejecutable = ejecutable.override(OS.UNIX, ruta).override(OS.MAC_OS_X, ruta);
+        }
+        redisServer = RedisServer.builder()
+            .redisExecProvider(ejecutable)
+            .port(puerto)
+            // Igual que en docker-compose.yml: buckets de 1000 pedidos con codificación compacta
+            .setting("hash-max-ziplist-entries 1024")
+            .setting("save \"\"")
+            .build();
+        redisServer.start();
+
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", puerto));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void detenerRedis() {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+    }
+
+    @Test
+    void memoriaPorPedido() {
+        // Los mismos valores que escribe transicion_estado.lua en cada modo de almacenamiento
+        double porClave = medir("hash por pedido", (connection, id) -> {
+            String estado = TrackingService.ESTADOS.get((int) (id % TrackingService.ESTADOS.size()));
+            connection.hashCommands().hMSet(bytes("tracking:" + id), Map.of(
+                bytes("estado"), bytes(estado),
+                bytes("fechaActualizacion"), bytes(String.valueOf(EPOCH_BASE_MS + id))));
+        });
+
+        double porBucket = medir("buckets", (connection, id) -> {
+            int ordinal = (int) (id % TrackingService.ESTADOS.size());
+            connection.hashCommands().hSet(bytes(TrackingService.PREFIJO_BUCKET + (id / TAMANO_BUCKET)),
+                bytes(String.valueOf(id)), bytes(ordinal + ":" + (EPOCH_BASE_MS + id)));
+        });
+
+        String codificacion = redisTemplate.execute((RedisCallback<String>) connection ->
+            String.valueOf(connection.keyCommands().encodingOf(bytes(TrackingService.PREFIJO_BUCKET + "0"))));
+        System.out.printf("Codificación de un bucket: %s%n", codificacion);
+        System.out.printf("Reducción: %.1f%%%n", 100 * (1 - porBucket / porClave));
+
+        assertTrue(porBucket < porClave, "Los buckets deberían ocupar menos memoria por pedido");
+    }
+
+    /**
+     * Escribe los pedidos en pipelines y devuelve el incremento de used_memory por pedido
+     */
+    private double medir(String almacenamiento, BiConsumer<RedisConnection, Long> escribir) {
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        });
+        long antes = memoriaUsada();
+
+        for (long desde = 1; desde <= pedidos; desde += PEDIDOS_POR_PIPELINE) {
+            long inicio = desde;
+            long fin = Math.min(pedidos, desde + PEDIDOS_POR_PIPELINE - 1);
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (long id = inicio; id <= fin; id++) {
+                    escribir.accept(connection, id);
+                }
+                return null;
+            });
+        }
+
+        long despues = memoriaUsada();
+        double porPedido = (double) (despues - antes) / pedidos;
+        System.out.printf("%-16s %,d pedidos - %,d bytes (%.1f bytes por pedido)%n",
+                          almacenamiento, pedidos, despues - antes, porPedido);
+        return porPedido;
+    }
+
+    private long memoriaUsada() {
+        Properties info = redisTemplate.execute(
+            (RedisCallback<Properties>) connection -> connection.serverCommands().info("memory"));
+        return Long.parseLong(info.getProperty("used_memory"));
+    }
+
+    private static byte[] bytes(String valor) {
+        return valor.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,195 @@
+package com.proyecto.trackingservice.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import redis.embedded.RedisExecProvider;
+import redis.embedded.RedisServer;
+import redis.embedded.util.OS;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistorialCodecTest {
+
+    // Escrito por transicion_estado.lua: PENDIENTE a las 17:48:20 y luego ENVIADO a las 17:47:30
+    // (reloj atrasado, delta negativo)
+    private static final String HISTORIAL_LUA = "0100c881feac0d1263";
+
+    @Test
+    void codificaYDecodificaElHistorial() {
+        List<TrackingService.HistorialEntry> recientesPrimero = List.of(
+            entrada("2026-10-14T18:30:05", "ENVIADO", "ENTREGADO"),
+            entrada("2026-10-14T18:00:00", "PROCESANDO", "ENVIADO"),
+            entrada("2026-10-14T17:47:30", "PENDIENTE", "PROCESANDO"),
+            entrada("2026-10-14T17:47:30", null, "PENDIENTE"));
+
+        byte[] valor = HistorialCodec.codificar(recientesPrimero);
+
+        assertTrue(HistorialCodec.esCompacto(valor));
+        assertEntradas(recientesPrimero, HistorialCodec.decodificar(valor));
+    }
+
+    @Test
+    void admiteTimestampsQueRetroceden() {
+        List<TrackingService.HistorialEntry> recientesPrimero = List.of(
+            entrada("2026-10-14T17:47:30", "PENDIENTE", "ENVIADO"),
+            entrada("2026-10-14T17:48:20", null, "PENDIENTE"));
+
+        byte[] valor = HistorialCodec.codificar(recientesPrimero);
+
+        // 50 segundos hacia atrás en zigzag es 99
+        assertEquals(0x63, valor[valor.length - 1]);
+        assertEquals(HISTORIAL_LUA, HexFormat.of().formatHex(valor));
+        assertEntradas(recientesPrimero, HistorialCodec.decodificar(valor));
+    }
+
+    @Test
+    void laEntradaInicialNoTieneEstadoAnterior() {
+        byte[] valor = HistorialCodec.codificar(List.of(entrada("2026-10-14T17:48:20", null, "PENDIENTE")));
+
+        // (anterior -1 + 1) * 16 + ordinal de PENDIENTE
+        assertEquals(0x00, valor[1]);
+        TrackingService.HistorialEntry inicial = HistorialCodec.decodificar(valor).get(0);
+        assertNull(inicial.getEstadoAnterior());
+        assertEquals("PENDIENTE", inicial.getEstadoNuevo());
+    }
+
+    @Test
+    void historialVacio() {
+        byte[] valor = HistorialCodec.codificar(List.of());
+
+        assertArrayEquals(new byte[] {HistorialCodec.VERSION}, valor);
+        assertTrue(HistorialCodec.decodificar(valor).isEmpty());
+    }
+
+    @Test
+    void rechazaVarintTruncado() {
+        byte[] valor = HexFormat.of().parseHex(HISTORIAL_LUA);
+        byte[] truncado = Arrays.copyOf(valor, 5);
+
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+            () -> HistorialCodec.decodificar(truncado));
+        assertEquals("Historial truncado", error.getMessage());
+    }
+
+    @Test
+    void rechazaFormatoAnterior() {
+        byte[] json = "{\"estadoNuevo\":\"PENDIENTE\"}".getBytes(StandardCharsets.UTF_8);
+
+        assertFalse(HistorialCodec.esCompacto(json));
+        assertThrows(IllegalArgumentException.class, () -> HistorialCodec.decodificar(json));
+    }
+
+    @Test
+    void rechazaEstadosDesconocidos() {
+        assertThrows(IllegalArgumentException.class, () -> HistorialCodec.codificar(
+            List.of(entrada("2026-10-14T17:48:20", null, "PERDIDO"))));
+        // Ordinal 15 en el estado nuevo
+        assertThrows(IllegalArgumentException.class, () -> HistorialCodec.decodificar(new byte[] {1, 0x0F, 0}));
+    }
+
+    @Test
+    void coincideConElFormatoDelScript() {
+        byte[] valor = HexFormat.of().parseHex(HISTORIAL_LUA);
+
+        List<TrackingService.HistorialEntry> entradas = HistorialCodec.decodificar(valor);
+
+        assertEntradas(List.of(
+            entrada("2026-10-14T17:47:30", "PENDIENTE", "ENVIADO"),
+            entrada("2026-10-14T17:48:20", null, "PENDIENTE")), entradas);
+        assertArrayEquals(valor, HistorialCodec.codificar(entradas));
+    }
+
+    /**
+     * Ejecuta transicion_estado.lua y compara su historial con el codificado en Java.
+     * Requiere Redis 5 o posterior (el embebido es 2.8). Ejecutar con:
+     * mvn test -Dtest=HistorialCodecTest -Dhistorial.redis.ejecutable=/ruta/redis-server
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "historial.redis.ejecutable", matches = ".+")
+    void elScriptEscribeLoMismoQueElCodec() throws IOException {
+        int puerto;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            puerto = socket.getLocalPort();
+        }
+        String ruta = System.getProperty("historial.redis.ejecutable");
+        RedisServer redisServer = RedisServer.builder()
+            .redisExecProvider(RedisExecProvider.defaultProvider().override(OS.UNIX, ruta).override(OS.MAC_OS_X, ruta))
+            .port(puerto)
+            .setting("save \"\"")
+            .build();
+        redisServer.start();
+        LettuceConnectionFactory connectionFactory =
+            new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", puerto));
+        try {
+            connectionFactory.afterPropertiesSet();
+            StringRedisTemplate redisTemplate = new StringRedisTemplate(connectionFactory);
+            DefaultRedisScript<String> script = new DefaultRedisScript<>();
+            script.setLocation(new ClassPathResource("scripts/transicion_estado.lua"));
+            script.setResultType(String.class);
+
+            int maximo = 4;
+            LocalDateTime fecha = LocalDateTime.parse("2026-10-14T17:48:20");
+            long[] saltos = {0, 125, -50, 86_400, 3, -3_600, 1_000_000};
+            List<TrackingService.HistorialEntry> esperado = new ArrayList<>();
+            String anterior = null;
+            for (int i = 0; i < saltos.length; i++) {
+                fecha = fecha.plusSeconds(saltos[i]);
+                String iso = fecha.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+                String estado = TrackingService.ESTADOS.get((i + 1) % TrackingService.ESTADOS.size());
+                List<String> argumentos = new ArrayList<>(List.of(
+                    "1", estado, iso, String.valueOf(maximo), "tracking-test",
+                    String.valueOf(TrackingService.aEpochMs(fecha)), String.valueOf(HistorialCodec.segundos(fecha)), ""));
+                argumentos.addAll(TrackingService.ESTADOS);
+                redisTemplate.execute(script, List.of("tracking:1", "historial:1", "estadisticas:tracking",
+                    "outbox:pedido-sync", "estadisticas:tracking:reconstruyendo",
+                    "estadisticas:tracking:reconstruccion", "estadisticas:tracking:contadas"), argumentos.toArray());
+                esperado.add(0, entrada(iso, anterior, estado));
+                anterior = estado;
+            }
+
+            byte[] valor = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get("historial:1".getBytes(StandardCharsets.UTF_8)));
+            List<TrackingService.HistorialEntry> recientes = esperado.subList(0, maximo);
+            assertEntradas(recientes, HistorialCodec.decodificar(valor));
+            assertArrayEquals(HistorialCodec.codificar(recientes), valor);
+        } finally {
+            connectionFactory.destroy();
+            redisServer.stop();
+        }
+    }
+
+    private static TrackingService.HistorialEntry entrada(String timestamp, String anterior, String nuevo) {
+        return new TrackingService.HistorialEntry(timestamp, anterior, nuevo);
+    }
+
+    private static void assertEntradas(List<TrackingService.HistorialEntry> esperadas,
+                                       List<TrackingService.HistorialEntry> obtenidas) {
+        assertEquals(esperadas.size(), obtenidas.size());
+        for (int i = 0; i < esperadas.size(); i++) {
+            assertEquals(esperadas.get(i).getTimestamp(), obtenidas.get(i).getTimestamp(), "timestamp " + i);
+            assertEquals(esperadas.get(i).getEstadoAnterior(), obtenidas.get(i).getEstadoAnterior(), "anterior " + i);
+            assertEquals(esperadas.get(i).getEstadoNuevo(), obtenidas.get(i).getEstadoNuevo(), "nuevo " + i);
+        }
+    }
+}